@@ -0,0 +1,197 @@
+package io.github.mat3e.schedule.domain;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+/**
+ * On calls follow each other with an hour gap in between, going through the rooms one by one - so there is at most
+ * one surgeon's on call at a time (all the surgeons are equal) and visits can be immersed into them.
+ * <p>
+ * Commands which succeed change a copy of the prepared schedule, so each invocation works with the same number of
+ * entries - {@link #copy()} is the baseline for them. Conflicting commands change nothing, so they use the prepared
+ * schedule directly. Probes are spread randomly over the whole schedule.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ScheduleBenchmark {
+    private static final int ROOMS = 20;
+    private static final int PROBES = 1024;
+    private static final ZonedDateTime START = ZonedDateTime.of(2020, 1, 6, 8, 0, 0, 0, ZoneId.of("Europe/Warsaw"));
+    private static final Doctor SURGEON = new Doctor(Specialization.SURGEON);
+    private static final Patient PATIENT = new Patient("patient");
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    int entries;
+
+    private List<Room> rooms;
+    private ScheduleFactory scheduleFactory;
+    private Schedule schedule;
+    private ScheduleSnapshot snapshot;
+    private List<ScheduleEntry> roster;
+    private final ScheduleEntry[] freeOnCalls = new ScheduleEntry[PROBES];
+    private final ScheduleEntry[] takenOnCalls = new ScheduleEntry[PROBES];
+    private final ScheduleEntry[] visitsWithinOnCalls = new ScheduleEntry[PROBES];
+    private final ScheduleEntry[] visitsWithoutOnCalls = new ScheduleEntry[PROBES];
+    // erasing 3 on calls
+    private final ZonedDateTime[] takenRanges = new ZonedDateTime[PROBES * 2];
+    private final ZonedDateTime[] emptyRanges = new ZonedDateTime[PROBES * 2];
+    private int probe;
+
+    @Setup(Level.Trial)
+    public void prepare() {
+        rooms = IntStream.range(0, ROOMS)
+                .mapToObj(i -> new Room(String.valueOf(i)))
+                .collect(toUnmodifiableList());
+        scheduleFactory = new ScheduleFactory(() -> rooms);
+        List<ScheduleEntry> onCalls = new ArrayList<>(entries);
+        for (int slot = 0; slot < entries; slot++) {
+            onCalls.add(new ScheduleEntry(SURGEON, slotStart(slot), slotStart(slot).plusHours(1), roomOf(slot)));
+        }
+        schedule = new Schedule(rooms);
+        schedule.load(onCalls);
+        snapshot = schedule.getSnapshot();
+        roster = onCalls;
+
+        var random = new Random(42);
+        for (int i = 0; i < PROBES; i++) {
+            int slot = random.nextInt(entries - 2);
+            var start = slotStart(slot);
+            freeOnCalls[i] = new ScheduleEntry(SURGEON, start.plusHours(1), start.plusHours(2), roomOf(slot));
+            takenOnCalls[i] = onCalls.get(slot);
+            visitsWithinOnCalls[i] = new ScheduleEntry(SURGEON, start.plusMinutes(15), start.plusMinutes(45), roomOf(slot), PATIENT);
+            visitsWithoutOnCalls[i] = new ScheduleEntry(SURGEON, start.plusMinutes(75), start.plusMinutes(105), roomOf(slot), PATIENT);
+            takenRanges[2 * i] = start.plusMinutes(30);
+            takenRanges[2 * i + 1] = start.plusHours(4).plusMinutes(30);
+            emptyRanges[2 * i] = start.plusMinutes(65);
+            emptyRanges[2 * i + 1] = start.plusMinutes(115);
+        }
+    }
+
+    @Benchmark
+    public Schedule copy() {
+        return schedule.copy();
+    }
+
+    @Benchmark
+    public Schedule scheduleOnCall() {
+        var result = schedule.copy();
+        result.scheduleOnCall(freeOnCalls[nextProbe()]);
+        return result;
+    }
+
+    @Benchmark
+    public Object scheduleOnCallConflicting() {
+        try {
+            schedule.scheduleOnCall(takenOnCalls[nextProbe()]);
+            throw new IllegalStateException("On call should be rejected");
+        } catch (ScheduleException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public ScheduleOutcome tryScheduleOnCallConflicting() {
+        return schedule.tryScheduleOnCall(takenOnCalls[nextProbe()]);
+    }
+
+    @Benchmark
+    public Schedule scheduleVisit() {
+        var result = schedule.copy();
+        result.scheduleVisit(visitsWithinOnCalls[nextProbe()]);
+        return result;
+    }
+
+    @Benchmark
+    public Object scheduleVisitConflicting() {
+        try {
+            schedule.scheduleVisit(visitsWithoutOnCalls[nextProbe()]);
+            throw new IllegalStateException("Visit should be rejected");
+        } catch (ScheduleException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public ScheduleOutcome tryScheduleVisitConflicting() {
+        return schedule.tryScheduleVisit(visitsWithoutOnCalls[nextProbe()]);
+    }
+
+    @Benchmark
+    public Schedule erase() {
+        var result = schedule.copy();
+        int i = nextProbe();
+        result.erase(takenRanges[2 * i], takenRanges[2 * i + 1]);
+        return result;
+    }
+
+    @Benchmark
+    public Object eraseConflicting() {
+        int i = nextProbe();
+        try {
+            schedule.erase(emptyRanges[2 * i], emptyRanges[2 * i + 1]);
+            throw new IllegalStateException("Nothing should be erased");
+        } catch (ScheduleException e) {
+            return e;
+        }
+    }
+
+    @Benchmark
+    public long entriesBetween() {
+        int i = nextProbe();
+        return schedule.entriesBetween(takenRanges[2 * i], takenRanges[2 * i + 1]).count();
+    }
+
+    @Benchmark
+    public ScheduleSnapshot getSnapshot() {
+        return schedule.getSnapshot();
+    }
+
+    @Benchmark
+    public Schedule restore() {
+        return scheduleFactory.restore(snapshot);
+    }
+
+    @Benchmark
+    public Schedule restoreTrusted() {
+        return scheduleFactory.restoreTrusted(snapshot);
+    }
+
+    @Benchmark
+    public Schedule importEntries() {
+        var result = scheduleFactory.create();
+        result.importEntries(roster, ForkJoinPool.commonPool());
+        return result;
+    }
+
+    private int nextProbe() {
+        probe = (probe + 1) & (PROBES - 1);
+        return probe;
+    }
+
+    private Room roomOf(final int slot) {
+        return rooms.get(slot % ROOMS);
+    }
+
+    private static ZonedDateTime slotStart(final int slot) {
+        return START.plusHours(2L * slot);
+    }
+}
@@ -0,0 +1,58 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.List;
+
+/**
+ * Keeps the rooms loaded once, until {@link #roomsChanged()} - every schedule built by {@link ScheduleFactory} needs
+ * them, while they change rarely.
+ * <p>
+ * Publishes {@code cache.gets} (tagged with the result: hit or miss), tagged with {@code cache=rooms}.
+ */
+class CachingRoomRepository implements RoomRepository {
+    private static final String CACHE_NAME = "rooms";
+
+    private final RoomRepository delegate;
+    private final Counter hits;
+    private final Counter misses;
+    private volatile List<Room> rooms;
+    // tells whether the rooms changed while loading them; guarded by this
+    private long changes;
+
+    CachingRoomRepository(final RoomRepository delegate, final MeterRegistry registry) {
+        this.delegate = delegate;
+        this.hits = Counter.builder("cache.gets").tags("result", "hit", "cache", CACHE_NAME).register(registry);
+        this.misses = Counter.builder("cache.gets").tags("result", "miss", "cache", CACHE_NAME).register(registry);
+    }
+
+    @Override
+    public List<Room> findAll() {
+        List<Room> result = rooms;
+        if (result != null) {
+            hits.increment();
+            return result;
+        }
+        misses.increment();
+        long changesBefore;
+        synchronized (this) {
+            changesBefore = changes;
+        }
+        result = List.copyOf(delegate.findAll());
+        synchronized (this) {
+            if (changes == changesBefore) {
+                rooms = result;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Makes the next {@link #findAll()} load the rooms again.
+     */
+    synchronized void roomsChanged() {
+        changes++;
+        rooms = null;
+    }
+}
@@ -0,0 +1,270 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.UUID;
+
+/**
+ * Keeps the most recently used schedules in front of another repository, so hot clinics are not loaded and rebuilt
+ * for every command. A hit costs a copy of the cached schedule - O(rooms) thanks to the persistent trees.
+ * <p>
+ * Saves check the version against the cached one. A save which the underlying repository rejects drops the clinic from
+ * the cache, so the next load sees what was actually stored.
+ * <p>
+ * With write-behind, saves of cached clinics are accepted right away and passed on to the underlying repository in
+ * batches of {@code writeBehindSaves} (or on {@link #flush()} and {@link #close()}). Each save is passed on separately,
+ * so versions stay the same in both repositories. Clinics with saves not passed on yet are never evicted - the least
+ * recently used of the others go instead, and the cache catches up with its size once the saves are passed on. When
+ * the underlying repository fails a save passed on behind, the clinic's next save gets
+ * {@link ScheduleVersionConflictException} (caused by that failure) instead of whoever happened to trigger the flush.
+ * <p>
+ * Publishes {@code cache.gets} (tagged with the result: hit or miss), {@code cache.evictions} and {@code cache.size},
+ * all tagged with {@code cache=schedules}.
+ */
+class CachingScheduleRepository implements ScheduleRepository, Closeable {
+    private static final String CACHE_NAME = "schedules";
+
+    private final ScheduleRepository delegate;
+    private final int maxSize;
+    private final int writeBehindSaves;
+    // access ordered; guarded by itself, also guards the pending and the lost saves
+    private final Map<UUID, CachedSchedule> cache;
+    private final Queue<PendingSave> pendingSaves = new ArrayDeque<>();
+    // clinics which lost their saves passed on behind, to fail their next save
+    private final Map<UUID, RuntimeException> lostSaves = new HashMap<>();
+    // keeps the order of saves passed on to the delegate
+    private final Object flushLock = new Object();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    CachingScheduleRepository(final ScheduleRepository delegate, final int maxSize, final MeterRegistry registry) {
+        this(delegate, maxSize, 0, registry);
+    }
+
+    /**
+     * @param writeBehindSaves number of saves to collect before passing them on; 0 passes each save on right away
+     */
+    CachingScheduleRepository(
+            final ScheduleRepository delegate,
+            final int maxSize,
+            final int writeBehindSaves,
+            final MeterRegistry registry
+    ) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size should be positive, got " + maxSize);
+        }
+        if (writeBehindSaves < 0) {
+            throw new IllegalArgumentException("Number of saves to collect cannot be negative, got " + writeBehindSaves);
+        }
+        this.delegate = delegate;
+        this.maxSize = maxSize;
+        this.writeBehindSaves = writeBehindSaves;
+        this.hits = cacheCounter(registry, "cache.gets", "result", "hit");
+        this.misses = cacheCounter(registry, "cache.gets", "result", "miss");
+        this.evictions = cacheCounter(registry, "cache.evictions");
+        this.cache = new LinkedHashMap<>(16, .75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<UUID, CachedSchedule> eldest) {
+                evictOverflow();
+                return false;
+            }
+        };
+        Gauge.builder("cache.size", this, CachingScheduleRepository::size)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+    }
+
+    @Override
+    public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+        synchronized (cache) {
+            CachedSchedule cached = cache.get(clinicId);
+            if (cached != null) {
+                hits.increment();
+                return Optional.of(new VersionedSchedule(cached.schedule.copy(), cached.version));
+            }
+        }
+        misses.increment();
+        Optional<VersionedSchedule> loaded = delegate.findBy(clinicId);
+        loaded.ifPresent(found -> cacheIfNewer(found.getSchedule().copy(), found.getVersion()));
+        return loaded;
+    }
+
+    @Override
+    public long save(final Schedule schedule, final long expectedVersion) {
+        synchronized (cache) {
+            RuntimeException lost = lostSaves.remove(schedule.getClinicId());
+            if (lost != null) {
+                var conflict = new ScheduleVersionConflictException(schedule.getClinicId(), expectedVersion);
+                conflict.initCause(lost);
+                throw conflict;
+            }
+        }
+        if (writeBehindSaves > 0) {
+            Optional<Long> savedVersion = saveBehind(schedule, expectedVersion);
+            if (savedVersion.isPresent()) {
+                return savedVersion.get();
+            }
+        }
+        long newVersion;
+        try {
+            newVersion = delegate.save(schedule, expectedVersion);
+        } catch (ScheduleVersionConflictException e) {
+            synchronized (cache) {
+                cache.remove(schedule.getClinicId());
+            }
+            throw e;
+        }
+        cacheIfNewer(schedule.copy(), newVersion);
+        return newVersion;
+    }
+
+    /**
+     * Passes on all the collected saves, in the order they were made. A clinic whose save fails loses its saves which
+     * were not passed on yet, the other clinics are passed on anyway.
+     *
+     * @throws ScheduleVersionConflictException when the underlying repository was changed by someone else, or whatever
+     *                                          the underlying repository failed with - the first failure of this flush
+     */
+    void flush() {
+        RuntimeException failure = passOnPendingSaves();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    @Override
+    public void close() {
+        flush();
+    }
+
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    // empty when the clinic is not cached - there is nothing to check the version against
+    private Optional<Long> saveBehind(final Schedule schedule, final long expectedVersion) {
+        int pendingSavesCount;
+        long newVersion = expectedVersion + 1;
+        synchronized (cache) {
+            CachedSchedule cached = cache.get(schedule.getClinicId());
+            if (cached == null) {
+                return Optional.empty();
+            }
+            if (cached.version != expectedVersion) {
+                throw new ScheduleVersionConflictException(schedule.getClinicId(), expectedVersion);
+            }
+            // the copy takes over the changes, so the underlying repository gets them when the save is passed on
+            Schedule toSave = schedule.copyWithPendingChanges();
+            schedule.changesSaved(toSave.getPendingChanges().getChanges().size());
+            cache.put(schedule.getClinicId(), new CachedSchedule(toSave, newVersion, cached.unflushedSaves + 1));
+            pendingSaves.add(new PendingSave(toSave, expectedVersion));
+            pendingSavesCount = pendingSaves.size();
+        }
+        if (pendingSavesCount >= writeBehindSaves) {
+            // failures belong to the clinics which lost their saves, not to this one
+            passOnPendingSaves();
+        }
+        return Optional.of(newVersion);
+    }
+
+    // null when all the saves were passed on
+    private RuntimeException passOnPendingSaves() {
+        RuntimeException firstFailure = null;
+        synchronized (flushLock) {
+            PendingSave next;
+            while ((next = nextPendingSave()) != null) {
+                UUID clinicId = next.schedule.getClinicId();
+                try {
+                    delegate.save(next.schedule, next.expectedVersion);
+                } catch (RuntimeException e) {
+                    synchronized (cache) {
+                        pendingSaves.removeIf(pending -> pending.schedule.getClinicId().equals(clinicId));
+                        cache.remove(clinicId);
+                        lostSaves.put(clinicId, e);
+                    }
+                    if (firstFailure == null) {
+                        firstFailure = e;
+                    }
+                    continue;
+                }
+                synchronized (cache) {
+                    CachedSchedule cached = cache.get(clinicId);
+                    if (cached != null) {
+                        cached.unflushedSaves--;
+                    }
+                    evictOverflow();
+                }
+            }
+        }
+        return firstFailure;
+    }
+
+    // least recently used first, skipping the clinics with saves not passed on yet; guarded by the cache
+    private void evictOverflow() {
+        Iterator<CachedSchedule> leastRecentlyUsed = cache.values().iterator();
+        while (cache.size() > maxSize && leastRecentlyUsed.hasNext()) {
+            if (leastRecentlyUsed.next().unflushedSaves == 0) {
+                leastRecentlyUsed.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private PendingSave nextPendingSave() {
+        synchronized (cache) {
+            return pendingSaves.poll();
+        }
+    }
+
+    private void cacheIfNewer(final Schedule schedule, final long version) {
+        synchronized (cache) {
+            CachedSchedule cached = cache.get(schedule.getClinicId());
+            if (cached == null || cached.version < version) {
+                cache.put(schedule.getClinicId(), new CachedSchedule(schedule, version, cached == null ? 0 : cached.unflushedSaves));
+            }
+        }
+    }
+
+    private static Counter cacheCounter(final MeterRegistry registry, final String name, final String... tags) {
+        return Counter.builder(name)
+                .tags(tags)
+                .tag("cache", CACHE_NAME)
+                .register(registry);
+    }
+
+    private static class CachedSchedule {
+        final Schedule schedule;
+        final long version;
+        // accepted, but not passed on to the delegate yet
+        int unflushedSaves;
+
+        CachedSchedule(final Schedule schedule, final long version, final int unflushedSaves) {
+            this.schedule = schedule;
+            this.version = version;
+            this.unflushedSaves = unflushedSaves;
+        }
+    }
+
+    private static class PendingSave {
+        final Schedule schedule;
+        final long expectedVersion;
+
+        PendingSave(final Schedule schedule, final long expectedVersion) {
+            this.schedule = schedule;
+            this.expectedVersion = expectedVersion;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package io.github.mat3e.schedule.domain;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Routes commands to a mailbox per clinic. Each mailbox is drained by a single task at a time, so commands of a clinic
+ * run one after another without waiting for any lock, while different clinics run in parallel on the given executor.
+ * <p>
+ * A mailbox loads its clinic's schedule once and keeps it while there are commands to run - once drained, the mailbox
+ * is dropped together with the schedule, so idle clinics cost nothing (and put a cache like
+ * {@link CachingScheduleRepository} in front of the repository to make their next load cheap). Commands taken from the
+ * mailbox together are saved together, so a busy clinic makes fewer (and bigger) saves. When a save fails, all the
+ * commands run with it fail too - even the rejected ones, as they were decided against changes which were never
+ * saved - and the schedule is loaded again for the next ones.
+ * <p>
+ * Loading and saving block the executor's thread, so the executor should allow blocking, e.g. virtual threads, where
+ * available. Mailboxes are bounded - commands which don't fit fail right away with {@link RejectedExecutionException}.
+ */
+class ClinicCommandExecutor {
+    private static final int DEFAULT_MAILBOX_CAPACITY = 1_000;
+    // commands taken from a mailbox at once, so other clinics get their turn
+    private static final int DRAIN_LIMIT = 64;
+
+    private final ScheduleRepository repository;
+    private final Executor executor;
+    private final int mailboxCapacity;
+    private final ConcurrentMap<UUID, Mailbox> mailboxes = new ConcurrentHashMap<>();
+
+    ClinicCommandExecutor(final ScheduleRepository repository, final Executor executor) {
+        this(repository, executor, DEFAULT_MAILBOX_CAPACITY);
+    }
+
+    ClinicCommandExecutor(final ScheduleRepository repository, final Executor executor, final int mailboxCapacity) {
+        if (mailboxCapacity < 1) {
+            throw new IllegalArgumentException("Mailbox capacity should be positive, got " + mailboxCapacity);
+        }
+        this.repository = repository;
+        this.executor = executor;
+        this.mailboxCapacity = mailboxCapacity;
+    }
+
+    CompletableFuture<ScheduleOutcome> scheduleOnCall(final UUID clinicId, final ScheduleEntry onCall) {
+        return submit(clinicId, schedule -> schedule.tryScheduleOnCall(onCall));
+    }
+
+    CompletableFuture<ScheduleOutcome> scheduleVisit(final UUID clinicId, final ScheduleEntry visit) {
+        return submit(clinicId, schedule -> schedule.tryScheduleVisit(visit));
+    }
+
+    CompletableFuture<ScheduleOutcome> erase(final UUID clinicId, final ZonedDateTime from, final ZonedDateTime to) {
+        return submit(clinicId, schedule -> schedule.tryErase(from, to));
+    }
+
+    private CompletableFuture<ScheduleOutcome> submit(final UUID clinicId, final Function<Schedule, ScheduleOutcome> action) {
+        var command = new Command(action);
+        // added within compute, so a mailbox is never dropped with the command in it
+        Mailbox mailbox = mailboxes.compute(clinicId, (id, existing) -> {
+            Mailbox result = existing != null ? existing : new Mailbox(id);
+            result.add(command);
+            return result;
+        });
+        mailbox.scheduleDrain();
+        return command.result;
+    }
+
+    int mailboxCount() {
+        return mailboxes.size();
+    }
+
+    private class Mailbox {
+        private final UUID clinicId;
+        private final Queue<Command> commands = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger size = new AtomicInteger();
+        private final AtomicBoolean draining = new AtomicBoolean();
+        // touched only by the draining task
+        private VersionedSchedule current;
+
+        Mailbox(final UUID clinicId) {
+            this.clinicId = clinicId;
+        }
+
+        void add(final Command command) {
+            if (size.incrementAndGet() > mailboxCapacity) {
+                size.decrementAndGet();
+                command.result.completeExceptionally(new RejectedExecutionException("Too many commands for clinic " + clinicId));
+                return;
+            }
+            commands.add(command);
+        }
+
+        void scheduleDrain() {
+            if (draining.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    draining.set(false);
+                    failAll(e);
+                }
+            }
+        }
+
+        private void drain() {
+            try {
+                List<Command> batch = takeBatch();
+                if (!batch.isEmpty()) {
+                    run(batch);
+                }
+            } finally {
+                draining.set(false);
+                // commands could come after the batch was taken, but before the flag was cleared
+                if (!commands.isEmpty()) {
+                    scheduleDrain();
+                } else {
+                    dropIfIdle();
+                }
+            }
+        }
+
+        // commands are added within compute, so either they come before (and keep the mailbox) or get a new one
+        private void dropIfIdle() {
+            mailboxes.computeIfPresent(clinicId, (id, mailbox) -> mailbox == this && size.get() == 0 && !draining.get() ? null : mailbox);
+        }
+
+        private List<Command> takeBatch() {
+            List<Command> batch = new ArrayList<>();
+            Command next;
+            while (batch.size() < DRAIN_LIMIT && (next = commands.poll()) != null) {
+                size.decrementAndGet();
+                batch.add(next);
+            }
+            return batch;
+        }
+
+        private void run(final List<Command> batch) {
+            try {
+                if (current == null) {
+                    current = repository.findBy(clinicId)
+                            .orElseThrow(() -> new IllegalArgumentException("No schedule for clinic " + clinicId));
+                }
+            } catch (RuntimeException e) {
+                batch.forEach(command -> command.result.completeExceptionally(e));
+                return;
+            }
+            List<Command> decided = new ArrayList<>(batch.size());
+            List<ScheduleOutcome> outcomes = new ArrayList<>(batch.size());
+            boolean anyAccepted = false;
+            for (Command command : batch) {
+                try {
+                    ScheduleOutcome outcome = command.action.apply(current.getSchedule());
+                    decided.add(command);
+                    outcomes.add(outcome);
+                    anyAccepted |= outcome.isAccepted();
+                } catch (RuntimeException e) {
+                    // commands check their input before changing anything
+                    command.result.completeExceptionally(e);
+                }
+            }
+            if (anyAccepted) {
+                try {
+                    long version = repository.save(current.getSchedule(), current.getVersion());
+                    current = new VersionedSchedule(current.getSchedule(), version);
+                } catch (RuntimeException e) {
+                    current = null;
+                    decided.forEach(command -> command.result.completeExceptionally(e));
+                    return;
+                }
+            }
+            for (int i = 0; i < decided.size(); i++) {
+                decided.get(i).result.complete(outcomes.get(i));
+            }
+        }
+
+        private void failAll(final RuntimeException cause) {
+            List<Command> batch;
+            while (!(batch = takeBatch()).isEmpty()) {
+                batch.forEach(command -> command.result.completeExceptionally(cause));
+            }
+        }
+    }
+
+    private static class Command {
+        final Function<Schedule, ScheduleOutcome> action;
+        final CompletableFuture<ScheduleOutcome> result = new CompletableFuture<>();
+
+        Command(final Function<Schedule, ScheduleOutcome> action) {
+            this.action = action;
+        }
+    }
+}
@@ -0,0 +1,520 @@
+package io.github.mat3e.schedule.domain;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+/**
+ * Keeps each clinic's schedule as an append-only log - every save appends just the entries added and removed since
+ * the previous save, so it costs as much as the change, not as the whole schedule. Recurring on calls are compact, so
+ * a save which changed any of them appends all of them.
+ * <p>
+ * Every {@code checkpointInterval} saves the whole schedule is written as a checkpoint (encoded with
+ * {@link ScheduleSnapshotCodec}) and the log starts over, so loading replays at most that many saves on top of the
+ * latest checkpoint. The first save of a clinic is a checkpoint too, so schedules restored from elsewhere (with no
+ * changes recorded) are stored whole. Saves of the same clinic are serialized, different clinics don't wait for each other.
+ * <p>
+ * Logs stay open between saves, but only the {@code maxOpenLogs} most recently used ones - the others are closed and
+ * opened again by their next load or save.
+ */
+class EventLogScheduleRepository implements ScheduleRepository, Closeable {
+    private static final int DEFAULT_CHECKPOINT_INTERVAL = 1_000;
+    private static final int DEFAULT_MAX_OPEN_LOGS = 100;
+    // length and checksum of a record
+    private static final int RECORD_HEADER_BYTES = Integer.BYTES * 2;
+
+    private final Path directory;
+    private final ScheduleFactory scheduleFactory;
+    private final int checkpointInterval;
+    private final int maxOpenLogs;
+    private final ConcurrentMap<UUID, ClinicLog> logs = new ConcurrentHashMap<>();
+    // the least recently used first; guarded by itself, never while waiting for a log
+    private final Set<ClinicLog> openLogs = new LinkedHashSet<>();
+
+    EventLogScheduleRepository(final Path directory, final ScheduleFactory scheduleFactory) {
+        this(directory, scheduleFactory, DEFAULT_CHECKPOINT_INTERVAL);
+    }
+
+    EventLogScheduleRepository(final Path directory, final ScheduleFactory scheduleFactory, final int checkpointInterval) {
+        this(directory, scheduleFactory, checkpointInterval, DEFAULT_MAX_OPEN_LOGS);
+    }
+
+    EventLogScheduleRepository(
+            final Path directory,
+            final ScheduleFactory scheduleFactory,
+            final int checkpointInterval,
+            final int maxOpenLogs
+    ) {
+        if (checkpointInterval < 1) {
+            throw new IllegalArgumentException("Checkpoint interval should be positive, got " + checkpointInterval);
+        }
+        if (maxOpenLogs < 1) {
+            throw new IllegalArgumentException("Max open logs should be positive, got " + maxOpenLogs);
+        }
+        this.directory = directory;
+        this.scheduleFactory = scheduleFactory;
+        this.checkpointInterval = checkpointInterval;
+        this.maxOpenLogs = maxOpenLogs;
+    }
+
+    @Override
+    public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+        ClinicLog log = logOf(clinicId);
+        try {
+            return findBy(clinicId, log);
+        } finally {
+            closeLeastRecentlyUsed(log);
+        }
+    }
+
+    private Optional<VersionedSchedule> findBy(final UUID clinicId, final ClinicLog log) {
+        synchronized (log) {
+            Set<ScheduleEntry> entries = log.replay();
+            if (log.version == NO_VERSION) {
+                return Optional.empty();
+            }
+            var schedule = scheduleFactory.restoreTrusted(new ScheduleSnapshot(clinicId, entries, log.recurringOnCalls));
+            return Optional.of(new VersionedSchedule(schedule, log.version));
+        }
+    }
+
+    @Override
+    public long save(final Schedule schedule, final long expectedVersion) {
+        ClinicLog log = logOf(schedule.getClinicId());
+        try {
+            return save(schedule, expectedVersion, log);
+        } finally {
+            closeLeastRecentlyUsed(log);
+        }
+    }
+
+    private long save(final Schedule schedule, final long expectedVersion, final ClinicLog log) {
+        synchronized (log) {
+            if (!log.replayed) {
+                log.replay();
+            }
+            if (log.version != expectedVersion) {
+                throw new ScheduleVersionConflictException(schedule.getClinicId(), expectedVersion);
+            }
+            PendingChanges pending = schedule.getPendingChanges();
+            long newVersion = expectedVersion + 1;
+            if (expectedVersion == NO_VERSION) {
+                // restored schedules have no changes to append, so the first save writes the whole state
+                log.checkpoint(newVersion, pending.getResult());
+            } else {
+                Set<RecurringOnCall> recurringOnCalls = pending.getResult().getRecurringOnCalls();
+                log.append(newVersion, pending.getChanges(), recurringOnCalls.equals(log.recurringOnCalls) ? null : recurringOnCalls);
+                if (log.savesSinceCheckpoint >= checkpointInterval) {
+                    log.checkpoint(newVersion, pending.getResult());
+                }
+            }
+            schedule.changesSaved(pending.getChanges().size());
+            return newVersion;
+        }
+    }
+
+    /**
+     * Clinics are ordered by the time of their files - each save writes the log or the checkpoint, so the latest changed
+     * come first.
+     *
+     * @param limit maximum number of clinics to return
+     * @return clinics with anything stored, the most recently changed first; files of anything else are skipped
+     */
+    List<UUID> findMostRecentlyChanged(final int limit) {
+        Map<UUID, FileTime> lastChanges = new HashMap<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*.{log,checkpoint}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                UUID clinicId;
+                try {
+                    clinicId = UUID.fromString(name.substring(0, name.lastIndexOf('.')));
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                lastChanges.merge(clinicId, Files.getLastModifiedTime(file), (first, second) -> first.compareTo(second) >= 0 ? first : second);
+            }
+        } catch (NoSuchFileException e) {
+            return List.of();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return lastChanges.entrySet().stream()
+                .sorted(Map.Entry.<UUID, FileTime>comparingByValue().reversed().thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(Map.Entry::getKey)
+                .collect(toUnmodifiableList());
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (ClinicLog log : logs.values()) {
+            synchronized (log) {
+                log.close();
+            }
+        }
+        synchronized (openLogs) {
+            openLogs.clear();
+        }
+    }
+
+    int openLogCount() {
+        int result = 0;
+        for (ClinicLog log : logs.values()) {
+            synchronized (log) {
+                result += log.channel != null ? 1 : 0;
+            }
+        }
+        return result;
+    }
+
+    private ClinicLog logOf(final UUID clinicId) {
+        return logs.computeIfAbsent(clinicId, ClinicLog::new);
+    }
+
+    // called without the used log's lock, so two threads never wait for each other's logs
+    private void closeLeastRecentlyUsed(final ClinicLog used) {
+        synchronized (used) {
+            if (used.channel == null) {
+                // no log for the clinic yet, or closed already
+                return;
+            }
+        }
+        List<ClinicLog> evicted = new ArrayList<>();
+        synchronized (openLogs) {
+            openLogs.remove(used);
+            openLogs.add(used);
+            for (Iterator<ClinicLog> eldest = openLogs.iterator(); openLogs.size() > maxOpenLogs; ) {
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        for (ClinicLog log : evicted) {
+            synchronized (log) {
+                log.closeChannel();
+            }
+        }
+    }
+
+    private class ClinicLog {
+        private final Path logFile;
+        private final Path checkpointFile;
+        private FileChannel channel;
+        private boolean replayed;
+        private long version = NO_VERSION;
+        private int savesSinceCheckpoint;
+        private Set<RecurringOnCall> recurringOnCalls = Set.of();
+
+        ClinicLog(final UUID clinicId) {
+            this.logFile = directory.resolve(clinicId + ".log");
+            this.checkpointFile = directory.resolve(clinicId + ".checkpoint");
+        }
+
+        /**
+         * Reads the latest checkpoint and applies the saves logged after it. A record torn by an interrupted save is
+         * cut off the log.
+         */
+        Set<ScheduleEntry> replay() {
+            try {
+                Set<ScheduleEntry> entries = new HashSet<>();
+                version = NO_VERSION;
+                savesSinceCheckpoint = 0;
+                recurringOnCalls = Set.of();
+                if (Files.exists(checkpointFile)) {
+                    try (FileChannel checkpoint = FileChannel.open(checkpointFile, READ)) {
+                        ByteBuffer buffer = checkpoint.map(FileChannel.MapMode.READ_ONLY, 0, checkpoint.size());
+                        version = buffer.getLong();
+                        ScheduleSnapshot snapshot = ScheduleSnapshotCodec.decode(buffer);
+                        entries.addAll(snapshot.getEntries());
+                        recurringOnCalls = snapshot.getRecurringOnCalls();
+                    }
+                }
+                if (Files.exists(logFile)) {
+                    long size = channel().size();
+                    ByteBuffer buffer = channel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    long validLength = 0;
+                    while (buffer.remaining() >= RECORD_HEADER_BYTES) {
+                        int length = buffer.getInt();
+                        int checksum = buffer.getInt();
+                        if (length > buffer.remaining()) {
+                            break;
+                        }
+                        ByteBuffer record = buffer.slice().limit(length);
+                        if (checksumOf(record) != checksum) {
+                            break;
+                        }
+                        buffer.position(buffer.position() + length);
+                        validLength = buffer.position();
+                        applyRecord(record, entries);
+                    }
+                    if (validLength < size) {
+                        channel().truncate(validLength);
+                    }
+                }
+                replayed = true;
+                return entries;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * @param changedRecurringOnCalls all the recurring on calls when any of them changed; null otherwise
+         */
+        void append(final long newVersion, final List<ScheduleChange> changes, final Set<RecurringOnCall> changedRecurringOnCalls) {
+            try {
+                var bytes = new ByteArrayOutputStream();
+                var out = new DataOutputStream(bytes);
+                out.writeLong(newVersion);
+                out.writeInt(changes.size());
+                for (ScheduleChange change : changes) {
+                    out.writeBoolean(change.isAdded());
+                    writeEntry(out, change.getEntry());
+                }
+                out.writeBoolean(changedRecurringOnCalls != null);
+                if (changedRecurringOnCalls != null) {
+                    out.writeInt(changedRecurringOnCalls.size());
+                    for (RecurringOnCall onCall : changedRecurringOnCalls) {
+                        writeRecurringOnCall(out, onCall);
+                    }
+                }
+                ByteBuffer record = ByteBuffer.wrap(bytes.toByteArray());
+                ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES)
+                        .putInt(record.remaining())
+                        .putInt(checksumOf(record))
+                        .flip();
+                long position = channel().size();
+                try {
+                    writeFully(channel(), position, header, record);
+                    channel().force(false);
+                } catch (IOException e) {
+                    dropTornRecord(position);
+                    throw e;
+                }
+                version = newVersion;
+                savesSinceCheckpoint++;
+                if (changedRecurringOnCalls != null) {
+                    recurringOnCalls = changedRecurringOnCalls;
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        /**
+         * Replaces the checkpoint atomically and then clears the log. When interrupted in between, the saves already
+         * included in the checkpoint are skipped on replay, thanks to their versions.
+         */
+        void checkpoint(final long checkpointVersion, final ScheduleSnapshot snapshot) {
+            try {
+                ByteBuffer header = ByteBuffer.allocate(Long.BYTES).putLong(checkpointVersion).flip();
+                Path tempFile = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+                try (FileChannel checkpoint = FileChannel.open(tempFile, CREATE, WRITE, TRUNCATE_EXISTING)) {
+                    writeFully(checkpoint, 0, header, ScheduleSnapshotCodec.encode(snapshot));
+                    checkpoint.force(true);
+                }
+                Files.move(tempFile, checkpointFile, ATOMIC_MOVE, REPLACE_EXISTING);
+                channel().truncate(0);
+                channel().force(true);
+                version = checkpointVersion;
+                recurringOnCalls = snapshot.getRecurringOnCalls();
+                savesSinceCheckpoint = 0;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+                replayed = false;
+            }
+        }
+
+        // keeps what was replayed - this repository is the only one writing the log, so it's still up to date
+        void closeChannel() {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // nothing was pending, every save forces its writes
+                }
+                channel = null;
+            }
+        }
+
+        // otherwise the next save would append after the torn bytes, and replaying would cut both off
+        private void dropTornRecord(final long position) {
+            try {
+                channel().truncate(position);
+            } catch (IOException e) {
+                // the next save opens the log again and replays it first, which cuts the torn record off
+                try {
+                    close();
+                } catch (IOException ignored) {
+                    // closing a broken channel can fail too
+                }
+                replayed = false;
+            }
+        }
+
+        private void applyRecord(final ByteBuffer record, final Set<ScheduleEntry> entries) {
+            long recordVersion = record.getLong();
+            if (recordVersion <= version) {
+                // already in the checkpoint
+                return;
+            }
+            for (int i = record.getInt(); i > 0; i--) {
+                boolean added = record.get() != 0;
+                var entry = readEntry(record);
+                if (added) {
+                    entries.add(entry);
+                } else {
+                    entries.remove(entry);
+                }
+            }
+            // records appended before recurring on calls were known end here
+            if (record.hasRemaining() && record.get() != 0) {
+                Set<RecurringOnCall> changed = new HashSet<>();
+                for (int i = record.getInt(); i > 0; i--) {
+                    changed.add(readRecurringOnCall(record));
+                }
+                recurringOnCalls = changed;
+            }
+            version = recordVersion;
+            savesSinceCheckpoint++;
+        }
+
+        private FileChannel channel() throws IOException {
+            if (channel == null) {
+                Files.createDirectories(directory);
+                channel = openLog(logFile);
+            }
+            return channel;
+        }
+    }
+
+    // package-private, so tests can make the writes fail
+    FileChannel openLog(final Path logFile) throws IOException {
+        return FileChannel.open(logFile, CREATE, READ, WRITE);
+    }
+
+    private static void writeFully(final FileChannel channel, long position, final ByteBuffer... buffers) throws IOException {
+        for (ByteBuffer buffer : buffers) {
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+        }
+    }
+
+    private static int checksumOf(final ByteBuffer record) {
+        var crc = new CRC32();
+        crc.update(record.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static void writeEntry(final DataOutputStream out, final ScheduleEntry entry) throws IOException {
+        writeString(out, entry.getDoctor().getSpecialization().name());
+        writeDate(out, entry.getFrom());
+        writeDate(out, entry.getTo());
+        writeString(out, entry.getRoom().getName());
+        out.writeBoolean(entry.isVisit());
+        if (entry.isVisit()) {
+            writeString(out, entry.getPatient().getName());
+        }
+    }
+
+    private static ScheduleEntry readEntry(final ByteBuffer buffer) {
+        var doctor = new Doctor(Specialization.valueOf(readString(buffer)));
+        var from = readDate(buffer);
+        var to = readDate(buffer);
+        var room = new Room(readString(buffer));
+        var patient = buffer.get() != 0 ? new Patient(readString(buffer)) : null;
+        return new ScheduleEntry(doctor, from, to, room, patient);
+    }
+
+    private static void writeRecurringOnCall(final DataOutputStream out, final RecurringOnCall onCall) throws IOException {
+        writeString(out, onCall.getDoctor().getSpecialization().name());
+        writeDate(out, onCall.getFrom());
+        writeDate(out, onCall.getTo());
+        writeString(out, onCall.getRoom().getName());
+        out.writeInt(onCall.getEvery().getDays());
+        writeDate(out, onCall.getUntil());
+        out.writeInt(onCall.getSkipped().size());
+        for (ZonedDateTime skipped : onCall.getSkipped()) {
+            writeDate(out, skipped);
+        }
+    }
+
+    private static RecurringOnCall readRecurringOnCall(final ByteBuffer buffer) {
+        var doctor = new Doctor(Specialization.valueOf(readString(buffer)));
+        var from = readDate(buffer);
+        var to = readDate(buffer);
+        var room = new Room(readString(buffer));
+        var every = Period.ofDays(buffer.getInt());
+        var until = readDate(buffer);
+        Set<ZonedDateTime> skipped = new HashSet<>();
+        for (int i = buffer.getInt(); i > 0; i--) {
+            skipped.add(readDate(buffer));
+        }
+        return new RecurringOnCall(doctor, from, to, room, every, until, skipped);
+    }
+
+    private static void writeDate(final DataOutputStream out, final ZonedDateTime date) throws IOException {
+        out.writeLong(date.toEpochSecond());
+        out.writeInt(date.getNano());
+        writeString(out, date.getZone().getId());
+    }
+
+    private static ZonedDateTime readDate(final ByteBuffer buffer) {
+        var instant = Instant.ofEpochSecond(buffer.getLong(), buffer.getInt());
+        return ZonedDateTime.ofInstant(instant, ZoneId.of(readString(buffer)));
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        byte[] bytes = value.getBytes(UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+}
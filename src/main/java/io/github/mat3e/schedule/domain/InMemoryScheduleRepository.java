@@ -0,0 +1,42 @@
+package io.github.mat3e.schedule.domain;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Keeps copies of schedules, so changes to a loaded schedule are not visible until saved. Copies share the persistent
+ * trees, so loading and saving costs O(rooms) instead of O(entries).
+ * <p>
+ * Saving compares and sets the version per clinic; writers never wait for each other - the one which loses
+ * gets {@link ScheduleVersionConflictException} and should load the schedule again.
+ */
+class InMemoryScheduleRepository implements ScheduleRepository {
+    private final ConcurrentMap<UUID, VersionedSchedule> schedules = new ConcurrentHashMap<>();
+
+    @Override
+    public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+        return Optional.ofNullable(schedules.get(clinicId))
+                .map(stored -> new VersionedSchedule(stored.getSchedule().copy(), stored.getVersion()));
+    }
+
+    @Override
+    public long save(final Schedule schedule, final long expectedVersion) {
+        // changes don't matter here, they are just forgotten to not pile up
+        int pendingChanges = schedule.getPendingChanges().getChanges().size();
+        var toStore = new VersionedSchedule(schedule.copy(), expectedVersion + 1);
+        if (expectedVersion == NO_VERSION) {
+            if (schedules.putIfAbsent(schedule.getClinicId(), toStore) != null) {
+                throw new ScheduleVersionConflictException(schedule.getClinicId(), expectedVersion);
+            }
+        } else {
+            VersionedSchedule current = schedules.get(schedule.getClinicId());
+            if (current == null || current.getVersion() != expectedVersion || !schedules.replace(schedule.getClinicId(), current, toStore)) {
+                throw new ScheduleVersionConflictException(schedule.getClinicId(), expectedVersion);
+            }
+        }
+        schedule.changesSaved(pendingChanges);
+        return toStore.getVersion();
+    }
+}
@@ -0,0 +1,41 @@
+package io.github.mat3e.schedule.domain;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Read-only set of the entries kept in the given interval trees. The trees are persistent, so the set never changes,
+ * no matter what happens to the schedule it was taken from.
+ */
+class IndexedEntrySet extends AbstractSet<ScheduleEntry> {
+    private final List<IntervalIndex> indexes;
+    private final int size;
+
+    IndexedEntrySet(final Collection<IntervalIndex> indexes) {
+        this.indexes = List.copyOf(indexes);
+        this.size = this.indexes.stream().mapToInt(IntervalIndex::size).sum();
+    }
+
+    @Override
+    public Iterator<ScheduleEntry> iterator() {
+        return indexes.stream()
+                .flatMap(IntervalIndex::stream)
+                .iterator();
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean contains(final Object o) {
+        if (!(o instanceof ScheduleEntry)) {
+            return false;
+        }
+        var entry = (ScheduleEntry) o;
+        return indexes.stream().anyMatch(index -> index.contains(entry));
+    }
+}
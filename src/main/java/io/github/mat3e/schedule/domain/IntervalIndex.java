@@ -0,0 +1,719 @@
+package io.github.mat3e.schedule.domain;
+
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import static java.util.Comparator.comparing;
+
+/**
+ * Interval tree of schedule entries: a treap ordered by the entry start, where each node knows the latest end
+ * within its subtree. Finding entries which interfere with a given one costs O(log n + k).
+ * <p>
+ * Nodes also know the earliest start and the longest gap between the entries of their subtree, so finding the first
+ * gap long enough for a new entry skips the subtrees without one.
+ * <p>
+ * Nodes are the store - they keep no {@link ScheduleEntry}, just its dates as epoch nanoseconds and its room, doctor
+ * and zones as the ids from the {@link ValueRegistry} (patients have no ids, so the canonical instance is kept). Walking
+ * the tree and checking the entries compares just primitives, and entries are built only for the ones handed out. An
+ * entry, with a node in its room's tree and one in its doctor's, takes about half the heap it took when both nodes
+ * shared the entry with its two dates and their parts. Dates which don't fit in nanoseconds (before 1678 or after
+ * 2261) are rare, so such entries are simply kept whole.
+ * <p>
+ * The tree is persistent - adding or removing an entry creates a new index which copies just the path to the changed
+ * node and shares the rest with the previous version. Previous versions stay valid and never change.
+ */
+class IntervalIndex implements Iterable<ScheduleEntry> {
+    // epoch seconds which still fit in nanoseconds; later (or earlier) dates are clamped
+    private static final long MAX_SECONDS = Long.MAX_VALUE / 1_000_000_000L - 1;
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final int LEVEL_PRIORITIES = 1 << 27;
+
+    private final ValueRegistry registry;
+    private final Node root;
+    private final int size;
+
+    private IntervalIndex(final ValueRegistry registry, final Node root, final int size) {
+        this.registry = registry;
+        this.root = root;
+        this.size = size;
+    }
+
+    /**
+     * @param registry registry of the schedule, keeping the values behind the ids held by the nodes
+     */
+    static IntervalIndex empty(final ValueRegistry registry) {
+        return new IntervalIndex(registry, null, 0);
+    }
+
+    static long toEpochNanos(final ZonedDateTime date) {
+        long seconds = date.toEpochSecond();
+        if (seconds > MAX_SECONDS) {
+            return Long.MAX_VALUE;
+        }
+        if (seconds < -MAX_SECONDS) {
+            return Long.MIN_VALUE;
+        }
+        return seconds * NANOS_PER_SECOND + date.getNano();
+    }
+
+    private static boolean isClamped(final long epochNanos) {
+        return epochNanos == Long.MAX_VALUE || epochNanos == Long.MIN_VALUE;
+    }
+
+    /**
+     * Builds a balanced tree in O(n), without any rotations. Priorities fall with the depth (randomly within each
+     * level), so the tree stays a valid treap for the entries added later.
+     *
+     * @param entriesByStart distinct entries, ordered by their start dates
+     */
+    static IntervalIndex ofSorted(final ValueRegistry registry, final List<ScheduleEntry> entriesByStart) {
+        return new IntervalIndex(registry, build(registry, entriesByStart, 0, entriesByStart.size(), 0), entriesByStart.size());
+    }
+
+    /**
+     * @return index with the given entry; the very same index if there is such an entry already
+     */
+    IntervalIndex with(final ScheduleEntry entry) {
+        if (contains(entry)) {
+            return this;
+        }
+        Node node = nodeOf(registry, entry, ThreadLocalRandom.current().nextInt(), null, null);
+        return new IntervalIndex(registry, insert(root, node), size + 1);
+    }
+
+    /**
+     * @return index without the given entry; the very same index if there was no such entry
+     */
+    IntervalIndex without(final ScheduleEntry entry) {
+        if (!contains(entry)) {
+            return this;
+        }
+        return new IntervalIndex(registry, delete(root, new Query(entry, registry)), size - 1);
+    }
+
+    boolean contains(final ScheduleEntry entry) {
+        return find(root, new Query(entry, registry));
+    }
+
+    boolean isEmpty() {
+        return root == null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return entries in the order of their start dates
+     */
+    @Override
+    public Iterator<ScheduleEntry> iterator() {
+        return new InOrderIterator(registry, root);
+    }
+
+    Stream<ScheduleEntry> stream() {
+        return StreamSupport.stream(
+                Spliterators.spliterator(iterator(), size, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE),
+                false
+        );
+    }
+
+    /**
+     * Decides the same as {@link ScheduleEntry} comparing its dates (with zones), but on the nanoseconds and zone ids.
+     *
+     * @param entry entry to check
+     * @return entries whose dates interfere with the given entry, regardless of the room
+     */
+    Stream<ScheduleEntry> findInterfering(final ScheduleEntry entry) {
+        var result = new ArrayList<ScheduleEntry>();
+        collect(root, new Query(entry, registry), result);
+        return result.stream();
+    }
+
+    /**
+     * Lazy version of {@link #findInterfering(ScheduleEntry)} - entries come in the order of their start dates and the
+     * subtrees outside the given dates are skipped without visiting them.
+     */
+    Iterator<ScheduleEntry> iterateInterfering(final ScheduleEntry entry) {
+        return new InterferingIterator(registry, root, new Query(entry, registry));
+    }
+
+    /**
+     * Same as {@link #iterateInterfering(ScheduleEntry)}, merging the entries of all the given indexes.
+     */
+    static Iterator<ScheduleEntry> iterateInterfering(final Collection<IntervalIndex> indexes, final ScheduleEntry entry) {
+        var result = new MergingIterator();
+        indexes.forEach(index -> result.add(index.iterateInterfering(entry)));
+        return result;
+    }
+
+    /**
+     * Merges the given iterators, each ordered by the start dates, into one ordered the same way.
+     */
+    static Iterator<ScheduleEntry> merge(final Collection<Iterator<ScheduleEntry>> sources) {
+        var result = new MergingIterator();
+        sources.forEach(result::add);
+        return result;
+    }
+
+    /**
+     * Same as {@link #findInterfering(ScheduleEntry)}, but stops at the first entry and builds just that one.
+     *
+     * @param entry entry to check
+     * @return the earliest starting entry whose dates interfere with the given entry; null if there is none
+     */
+    ScheduleEntry findFirstInterfering(final ScheduleEntry entry) {
+        Node result = findFirst(root, new Query(entry, registry));
+        return result == null ? null : result.entry(registry);
+    }
+
+    /**
+     * @param date date to check
+     * @return entries which end at or before the given date
+     */
+    List<ScheduleEntry> findEndedBy(final ZonedDateTime date) {
+        var result = new ArrayList<ScheduleEntry>();
+        collectEndedBy(root, date, toEpochNanos(date), result);
+        return result;
+    }
+
+    /**
+     * Epoch nanoseconds are compared here - the result should be checked against the entries.
+     *
+     * @param after  epoch nanoseconds to start looking from
+     * @param length length of the gap in nanoseconds
+     * @return the earliest point, not before {@code after}, which starts a gap between (or after) the entries at least
+     * {@code length} long
+     */
+    long findGapStart(final long after, final long length) {
+        var candidate = new long[]{after};
+        findGap(root, candidate, length);
+        return candidate[0];
+    }
+
+    // moves the candidate past the entries which don't leave enough room before them; true when the gap is found
+    private static boolean findGap(final Node node, final long[] candidate, final long length) {
+        if (node == null || node.maxEnd <= candidate[0]) {
+            return false;
+        }
+        if (node.minStart >= saturatedAdd(candidate[0], length)) {
+            return true;
+        }
+        if (node.maxGap < length) {
+            candidate[0] = Math.max(candidate[0], node.maxEnd);
+            return false;
+        }
+        if (findGap(node.left, candidate, length)) {
+            return true;
+        }
+        if (node.start >= saturatedAdd(candidate[0], length)) {
+            return true;
+        }
+        candidate[0] = Math.max(candidate[0], occupiedUntil(node.start, node.end));
+        return findGap(node.right, candidate, length);
+    }
+
+    // entries with no length still interfere with anything around them
+    private static long occupiedUntil(final long start, final long end) {
+        return end > start ? end : saturatedAdd(end, 1);
+    }
+
+    private static long saturatedAdd(final long value, final long toAdd) {
+        return value > Long.MAX_VALUE - toAdd ? Long.MAX_VALUE : value + toAdd;
+    }
+
+    private static long gapBetween(final long end, final long nextStart) {
+        if (nextStart <= end) {
+            return 0;
+        }
+        long gap = nextStart - end;
+        return gap < 0 ? Long.MAX_VALUE : gap;
+    }
+
+    private void collectEndedBy(final Node node, final ZonedDateTime date, final long dateNanos, final List<ScheduleEntry> result) {
+        if (node == null) {
+            return;
+        }
+        collectEndedBy(node.left, date, dateNanos, result);
+        if (node.start > dateNanos) {
+            // right subtree starts even later
+            return;
+        }
+        if (node.end <= dateNanos && node.endsBy(date)) {
+            result.add(node.entry(registry));
+        }
+        collectEndedBy(node.right, date, dateNanos, result);
+    }
+
+    private void collect(final Node node, final Query query, final List<ScheduleEntry> result) {
+        if (node == null || node.maxEnd < query.from) {
+            return;
+        }
+        collect(node.left, query, result);
+        if (node.start > query.to) {
+            // right subtree starts even later
+            return;
+        }
+        if (node.end >= query.from && node.datesInterfereWith(query, registry)) {
+            result.add(node.entry(registry));
+        }
+        collect(node.right, query, result);
+    }
+
+    private Node findFirst(final Node node, final Query query) {
+        if (node == null || node.maxEnd < query.from) {
+            return null;
+        }
+        Node result = findFirst(node.left, query);
+        if (result != null) {
+            return result;
+        }
+        if (node.start > query.to) {
+            // right subtree starts even later
+            return null;
+        }
+        if (node.end >= query.from && node.datesInterfereWith(query, registry)) {
+            return node;
+        }
+        return findFirst(node.right, query);
+    }
+
+    private static boolean find(final Node node, final Query query) {
+        if (node == null) {
+            return false;
+        }
+        if (query.from < node.start) {
+            return find(node.left, query);
+        }
+        if (query.from > node.start) {
+            return find(node.right, query);
+        }
+        return node.holds(query) || find(node.left, query) || find(node.right, query);
+    }
+
+    // 32 levels, each with its own range of priorities, cover the whole int range - and any list which fits in memory
+    private static Node build(
+            final ValueRegistry registry,
+            final List<ScheduleEntry> entriesByStart,
+            final int from,
+            final int to,
+            final int depth
+    ) {
+        if (from >= to) {
+            return null;
+        }
+        int middle = (from + to) >>> 1;
+        int priority = Integer.MAX_VALUE - depth * LEVEL_PRIORITIES - ThreadLocalRandom.current().nextInt(LEVEL_PRIORITIES);
+        return nodeOf(
+                registry,
+                entriesByStart.get(middle),
+                priority,
+                build(registry, entriesByStart, from, middle, depth + 1),
+                build(registry, entriesByStart, middle + 1, to, depth + 1)
+        );
+    }
+
+    private static Node nodeOf(final ValueRegistry registry, final ScheduleEntry entry, final int priority, final Node left, final Node right) {
+        long start = toEpochNanos(entry.getFrom());
+        long end = toEpochNanos(entry.getTo());
+        if (isClamped(start) || isClamped(end)) {
+            return new WholeEntryNode(entry, start, end, priority, left, right);
+        }
+        return new Node(
+                start,
+                end,
+                registry.internedIdOf(entry.getRoom()),
+                registry.internedIdOf(entry.getDoctor()),
+                registry.internedIdOf(entry.getFrom().getZone()),
+                registry.internedIdOf(entry.getTo().getZone()),
+                entry.getPatient(),
+                priority,
+                left,
+                right
+        );
+    }
+
+    private static ZonedDateTime dateOf(final long epochNanos, final ZoneId zone) {
+        var instant = Instant.ofEpochSecond(Math.floorDiv(epochNanos, NANOS_PER_SECOND), Math.floorMod(epochNanos, NANOS_PER_SECOND));
+        return ZonedDateTime.ofInstant(instant, zone);
+    }
+
+    // same as comparing the dates: by the instant, then (for different zones) the local date-time and the zone
+    private static int compare(
+            final long epochNanos,
+            final int zone,
+            final long otherEpochNanos,
+            final int otherZone,
+            final ZonedDateTime other,
+            final ValueRegistry registry
+    ) {
+        if (epochNanos != otherEpochNanos) {
+            return epochNanos < otherEpochNanos ? -1 : 1;
+        }
+        if (zone == otherZone) {
+            return 0;
+        }
+        return dateOf(epochNanos, registry.zone(zone)).compareTo(other);
+    }
+
+    private static Node insert(final Node node, final Node newNode) {
+        if (node == null) {
+            return newNode;
+        }
+        if (newNode.start < node.start) {
+            Node left = insert(node.left, newNode);
+            if (left.priority > node.priority) {
+                // rotate right
+                return left.with(left.left, node.with(left.right, node.right));
+            }
+            return node.with(left, node.right);
+        }
+        Node right = insert(node.right, newNode);
+        if (right.priority > node.priority) {
+            // rotate left
+            return right.with(node.with(node.left, right.left), right.right);
+        }
+        return node.with(node.left, right);
+    }
+
+    // entries starting at the same time might end up on both sides after rotations
+    private static Node delete(final Node node, final Query query) {
+        if (node == null) {
+            return null;
+        }
+        if (query.from < node.start) {
+            return node.with(delete(node.left, query), node.right);
+        }
+        if (query.from > node.start) {
+            return node.with(node.left, delete(node.right, query));
+        }
+        if (node.holds(query)) {
+            return merge(node.left, node.right);
+        }
+        Node left = delete(node.left, query);
+        if (left != node.left) {
+            return node.with(left, node.right);
+        }
+        return node.with(node.left, delete(node.right, query));
+    }
+
+    // none of the nodes from the left tree starts after the nodes from the right tree
+    private static Node merge(final Node left, final Node right) {
+        if (left == null) {
+            return right;
+        }
+        if (right == null) {
+            return left;
+        }
+        if (left.priority > right.priority) {
+            return left.with(left.left, merge(left.right, right));
+        }
+        return right.with(merge(left, right.left), right.right);
+    }
+
+    /**
+     * The entry to look for, with its dates and zones already in the form kept by the nodes. Ids of the values never
+     * interned are {@link ValueRegistry#NO_ID}, so they match no node.
+     */
+    private static class Query {
+        final ScheduleEntry entry;
+        final long from;
+        final long to;
+        final int fromZone;
+        final int toZone;
+        final int room;
+        final int doctor;
+
+        Query(final ScheduleEntry entry, final ValueRegistry registry) {
+            this.entry = entry;
+            this.from = toEpochNanos(entry.getFrom());
+            this.to = toEpochNanos(entry.getTo());
+            this.fromZone = registry.idOf(entry.getFrom().getZone());
+            this.toZone = registry.idOf(entry.getTo().getZone());
+            this.room = registry.idOf(entry.getRoom());
+            this.doctor = registry.idOf(entry.getDoctor());
+        }
+
+        int compareToFrom(final long epochNanos, final int zone, final ValueRegistry registry) {
+            return compare(epochNanos, zone, from, fromZone, entry.getFrom(), registry);
+        }
+
+        int compareToTo(final long epochNanos, final int zone, final ValueRegistry registry) {
+            return compare(epochNanos, zone, to, toZone, entry.getTo(), registry);
+        }
+    }
+
+    private static class Node {
+        final long start;
+        final long end;
+        final int priority;
+        // latest end within the subtree; entries with no length are treated as lasting a nanosecond
+        final long maxEnd;
+        final long minStart;
+        // longest gap between the entries of the subtree, not counting the ones before it, so maybe longer in reality
+        final long maxGap;
+        final Node left;
+        final Node right;
+        // ids from the registry
+        final int room;
+        final int doctor;
+        final int fromZone;
+        final int toZone;
+        final Patient patient;
+
+        Node(
+                final long start,
+                final long end,
+                final int room,
+                final int doctor,
+                final int fromZone,
+                final int toZone,
+                final Patient patient,
+                final int priority,
+                final Node left,
+                final Node right
+        ) {
+            this.start = start;
+            this.end = end;
+            this.room = room;
+            this.doctor = doctor;
+            this.fromZone = fromZone;
+            this.toZone = toZone;
+            this.patient = patient;
+            this.priority = priority;
+            this.left = left;
+            this.right = right;
+            long latestEnd = occupiedUntil(start, end);
+            long longestGap = 0;
+            if (left != null) {
+                longestGap = Math.max(left.maxGap, gapBetween(left.maxEnd, start));
+                latestEnd = Math.max(latestEnd, left.maxEnd);
+            }
+            if (right != null) {
+                longestGap = Math.max(longestGap, Math.max(right.maxGap, gapBetween(latestEnd, right.minStart)));
+                latestEnd = Math.max(latestEnd, right.maxEnd);
+            }
+            this.maxEnd = latestEnd;
+            this.minStart = left != null ? left.minStart : start;
+            this.maxGap = longestGap;
+        }
+
+        Node with(final Node left, final Node right) {
+            if (left == this.left && right == this.right) {
+                return this;
+            }
+            return copy(left, right);
+        }
+
+        Node copy(final Node left, final Node right) {
+            return new Node(start, end, room, doctor, fromZone, toZone, patient, priority, left, right);
+        }
+
+        ScheduleEntry entry(final ValueRegistry registry) {
+            return new ScheduleEntry(
+                    registry.doctor(doctor),
+                    dateOf(start, registry.zone(fromZone)),
+                    dateOf(end, registry.zone(toZone)),
+                    registry.room(room),
+                    patient
+            );
+        }
+
+        // dates with the same instant and zone are the same
+        boolean holds(final Query query) {
+            return start == query.from
+                    && end == query.to
+                    && fromZone == query.fromZone
+                    && toZone == query.toZone
+                    && room == query.room
+                    && doctor == query.doctor
+                    && Objects.equals(patient, query.entry.getPatient());
+        }
+
+        // same as ScheduleEntry.datesInterfereWith: either start falls within the other's dates
+        boolean datesInterfereWith(final Query query, final ValueRegistry registry) {
+            int startComparedToQueryStart = query.compareToFrom(start, fromZone, registry);
+            return startComparedToQueryStart <= 0 && query.compareToFrom(end, toZone, registry) > 0
+                    || startComparedToQueryStart >= 0 && query.compareToTo(start, fromZone, registry) < 0;
+        }
+
+        // the nanoseconds are exact, so they decided already
+        boolean endsBy(final ZonedDateTime date) {
+            return true;
+        }
+    }
+
+    /**
+     * Entry with dates which don't fit in nanoseconds, kept as it is.
+     */
+    private static class WholeEntryNode extends Node {
+        final ScheduleEntry entry;
+
+        WholeEntryNode(final ScheduleEntry entry, final long start, final long end, final int priority, final Node left, final Node right) {
+            super(start, end, ValueRegistry.NO_ID, ValueRegistry.NO_ID, ValueRegistry.NO_ID, ValueRegistry.NO_ID, null, priority, left, right);
+            this.entry = entry;
+        }
+
+        @Override
+        Node copy(final Node left, final Node right) {
+            return new WholeEntryNode(entry, start, end, priority, left, right);
+        }
+
+        @Override
+        ScheduleEntry entry(final ValueRegistry registry) {
+            return entry;
+        }
+
+        @Override
+        boolean holds(final Query query) {
+            return entry.equals(query.entry);
+        }
+
+        @Override
+        boolean datesInterfereWith(final Query query, final ValueRegistry registry) {
+            return entry.datesInterfereWith$schedule(query.entry);
+        }
+
+        @Override
+        boolean endsBy(final ZonedDateTime date) {
+            return !entry.getTo().isAfter(date);
+        }
+    }
+
+    private static class InterferingIterator implements Iterator<ScheduleEntry> {
+        private final Deque<Node> path = new ArrayDeque<>();
+        private final ValueRegistry registry;
+        private final Query query;
+        private ScheduleEntry next;
+
+        InterferingIterator(final ValueRegistry registry, final Node root, final Query query) {
+            this.registry = registry;
+            this.query = query;
+            pushLeft(root);
+            next = advance();
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public ScheduleEntry next() {
+            if (next == null) {
+                throw new NoSuchElementException();
+            }
+            ScheduleEntry result = next;
+            next = advance();
+            return result;
+        }
+
+        // same checks as in collect, then the final decision of the entry
+        private ScheduleEntry advance() {
+            while (!path.isEmpty()) {
+                Node node = path.pop();
+                pushLeft(node.right);
+                if (node.end >= query.from && node.datesInterfereWith(query, registry)) {
+                    return node.entry(registry);
+                }
+            }
+            return null;
+        }
+
+        // nodes starting after the window are skipped together with their right subtrees
+        private void pushLeft(Node node) {
+            while (node != null && node.maxEnd >= query.from) {
+                if (node.start <= query.to) {
+                    path.push(node);
+                }
+                node = node.left;
+            }
+        }
+    }
+
+    private static class MergingIterator implements Iterator<ScheduleEntry> {
+        private final PriorityQueue<Source> sources = new PriorityQueue<>(comparing(source -> source.head.getFrom()));
+
+        void add(final Iterator<ScheduleEntry> source) {
+            if (source.hasNext()) {
+                sources.add(new Source(source));
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !sources.isEmpty();
+        }
+
+        @Override
+        public ScheduleEntry next() {
+            Source source = sources.poll();
+            if (source == null) {
+                throw new NoSuchElementException();
+            }
+            ScheduleEntry result = source.head;
+            if (source.rest.hasNext()) {
+                source.head = source.rest.next();
+                sources.add(source);
+            }
+            return result;
+        }
+
+        private static class Source {
+            final Iterator<ScheduleEntry> rest;
+            ScheduleEntry head;
+
+            Source(final Iterator<ScheduleEntry> rest) {
+                this.rest = rest;
+                this.head = rest.next();
+            }
+        }
+    }
+
+    private static class InOrderIterator implements Iterator<ScheduleEntry> {
+        private final Deque<Node> path = new ArrayDeque<>();
+        private final ValueRegistry registry;
+
+        InOrderIterator(final ValueRegistry registry, final Node root) {
+            this.registry = registry;
+            pushLeft(root);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return !path.isEmpty();
+        }
+
+        @Override
+        public ScheduleEntry next() {
+            if (path.isEmpty()) {
+                throw new NoSuchElementException();
+            }
+            Node node = path.pop();
+            pushLeft(node.right);
+            return node.entry(registry);
+        }
+
+        private void pushLeft(Node node) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+        }
+    }
+}
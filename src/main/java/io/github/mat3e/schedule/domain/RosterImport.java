@@ -0,0 +1,240 @@
+package io.github.mat3e.schedule.domain;
+
+import io.github.mat3e.schedule.domain.ScheduleOutcome.Rejection;
+
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Function;
+
+import static java.util.Comparator.comparing;
+import static java.util.Comparator.nullsFirst;
+
+/**
+ * Validates a whole roster on a fork-join pool. Entries are split by room first - each room checks its entries in
+ * parallel with the others. Entries accepted by their rooms are then split by doctor, so visits are checked against
+ * the doctor's entries in other rooms.
+ * <p>
+ * Within a partition entries go in {@link #ENTRY_ORDER} and the later of two conflicting entries is the rejected one,
+ * so the result doesn't depend on the order of the roster or on the timing of the tasks.
+ */
+class RosterImport {
+    /**
+     * Instants, then rooms, doctors and patients - so even entries starting at the same time have their order. Dates
+     * with zones come last, just to tell apart the entries which differ in zones only.
+     */
+    static final Comparator<ScheduleEntry> ENTRY_ORDER = comparing((ScheduleEntry entry) -> entry.getFrom().toInstant())
+            .thenComparing(entry -> entry.getTo().toInstant())
+            .thenComparing(entry -> entry.getRoom().getName())
+            .thenComparing(entry -> entry.getDoctor().getSpecialization())
+            .thenComparing(ScheduleEntry::getPatient, nullsFirst(comparing(Patient::getName)))
+            .thenComparing(ScheduleEntry::getFrom)
+            .thenComparing(ScheduleEntry::getTo);
+
+    private final ValueRegistry registry;
+    private final Function<ScheduleEntry, Rejection> roomRejection;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param roomRejection reason to reject an entry because of the given (conflicting) entry of the same room
+     */
+    RosterImport(final ValueRegistry registry, final Function<ScheduleEntry, Rejection> roomRejection, final ForkJoinPool pool) {
+        this.registry = registry;
+        this.roomRejection = roomRejection;
+        this.pool = pool;
+    }
+
+    Result validate(final Collection<ScheduleEntry> roster) {
+        Map<Room, List<ScheduleEntry>> byRoom = new HashMap<>();
+        roster.forEach(entry -> byRoom.computeIfAbsent(entry.getRoom(), room -> new ArrayList<>()).add(entry));
+        List<Partition> rooms = join(byRoom.values(), this::checkRoom);
+
+        // concatenated in the order of rooms, so sorting a doctor's entries just merges the rooms' runs
+        rooms.sort(comparing(partition -> partition.key.getRoom().getName()));
+        Map<Doctor, List<ScheduleEntry>> byDoctor = new HashMap<>();
+        rooms.forEach(partition -> partition.accepted.forEach(
+                entry -> byDoctor.computeIfAbsent(entry.getDoctor(), doctor -> new ArrayList<>()).add(entry)));
+        List<Partition> doctors = join(byDoctor.values(), this::checkDoctor);
+
+        List<Map.Entry<ScheduleEntry, Rejection>> rejections = new ArrayList<>();
+        rooms.forEach(partition -> rejections.addAll(partition.rejections));
+        doctors.forEach(partition -> rejections.addAll(partition.rejections));
+        if (!rejections.isEmpty()) {
+            rejections.sort(Map.Entry.comparingByKey(ENTRY_ORDER));
+            Map<ScheduleEntry, Rejection> result = new LinkedHashMap<>();
+            rejections.forEach(rejection -> result.putIfAbsent(rejection.getKey(), rejection.getValue()));
+            return new Result(new Rejection.BatchRejected(result), List.of(), List.of());
+        }
+        return new Result(null, rooms, doctors);
+    }
+
+    // results come in the order of the partitions, whichever task ends first
+    private List<Partition> join(final Collection<List<ScheduleEntry>> partitions, final Function<List<ScheduleEntry>, Partition> check) {
+        List<ForkJoinTask<Partition>> tasks = new ArrayList<>(partitions.size());
+        partitions.forEach(entries -> tasks.add(pool.submit(() -> check.apply(entries))));
+        List<Partition> result = new ArrayList<>(tasks.size());
+        tasks.forEach(task -> result.add(task.join()));
+        return result;
+    }
+
+    // single sweep, same as when restoring: each entry is compared with the latest ending one accepted before it
+    private Partition checkRoom(final List<ScheduleEntry> entries) {
+        var partition = new Partition(entries);
+        ScheduleEntry last = null;
+        for (ScheduleEntry entry : sorted(entries)) {
+            // the same entries end up next to each other
+            if (entry.equals(last)) {
+                continue;
+            }
+            last = entry;
+            var previous = partition.latestEnding;
+            if (previous != null && previous.datesInterfereWith$schedule(entry)) {
+                partition.reject(entry, roomRejection.apply(previous));
+                continue;
+            }
+            partition.latestEnding = laterEnding(previous, entry);
+            partition.accept(entry);
+        }
+        return partition.indexedIfAllAccepted(registry);
+    }
+
+    // a visit conflicts with the doctor's on calls in other rooms and with the doctor's other visits
+    private Partition checkDoctor(final List<ScheduleEntry> entries) {
+        var partition = new Partition(entries);
+        Map<Room, ScheduleEntry> latestEndingOnCallPerRoom = new HashMap<>();
+        for (ScheduleEntry entry : sorted(entries)) {
+            var previousVisit = partition.latestEnding;
+            if (entry.isVisit()) {
+                ScheduleEntry onCall = findOnCallInOtherRoom(latestEndingOnCallPerRoom, entry);
+                if (onCall != null) {
+                    partition.reject(entry, new Rejection.RoomMismatch(onCall));
+                    continue;
+                }
+            }
+            if (previousVisit != null && previousVisit.datesInterfereWith$schedule(entry)) {
+                partition.reject(entry, new Rejection.VisitAlreadyScheduled(previousVisit));
+                continue;
+            }
+            if (entry.isVisit()) {
+                partition.latestEnding = laterEnding(previousVisit, entry);
+            } else {
+                latestEndingOnCallPerRoom.merge(entry.getRoom(), entry, RosterImport::laterEnding);
+            }
+            partition.accept(entry);
+        }
+        return partition.indexedIfAllAccepted(registry);
+    }
+
+    // dates are compared as epoch nanoseconds, the whole order is needed just for the entries starting and ending together
+    private List<ScheduleEntry> sorted(final List<ScheduleEntry> entries) {
+        var keys = new SortKey[entries.size()];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new SortKey(registry.intern(entries.get(i)));
+        }
+        Arrays.sort(keys);
+        List<ScheduleEntry> result = new ArrayList<>(keys.length);
+        for (SortKey key : keys) {
+            result.add(key.entry);
+        }
+        return result;
+    }
+
+    // entries with no length count as lasting a nanosecond, so the ones starting right at them are still compared with them
+    private static ScheduleEntry laterEnding(final ScheduleEntry previous, final ScheduleEntry next) {
+        if (previous == null || Schedule.occupiedUntil(next).isAfter(Schedule.occupiedUntil(previous))) {
+            return next;
+        }
+        return previous;
+    }
+
+    // rooms of a clinic are few, so all of them are checked
+    private static ScheduleEntry findOnCallInOtherRoom(final Map<Room, ScheduleEntry> latestEndingOnCallPerRoom, final ScheduleEntry visit) {
+        ScheduleEntry result = null;
+        for (ScheduleEntry onCall : latestEndingOnCallPerRoom.values()) {
+            if (!onCall.getRoom().equals(visit.getRoom())
+                    && onCall.datesInterfereWith$schedule(visit)
+                    && (result == null || ENTRY_ORDER.compare(onCall, result) < 0)) {
+                result = onCall;
+            }
+        }
+        return result;
+    }
+
+    private static class SortKey implements Comparable<SortKey> {
+        final long from;
+        final long to;
+        final ScheduleEntry entry;
+
+        SortKey(final ScheduleEntry entry) {
+            this.from = IntervalIndex.toEpochNanos(entry.getFrom());
+            this.to = IntervalIndex.toEpochNanos(entry.getTo());
+            this.entry = entry;
+        }
+
+        // consistent with ENTRY_ORDER: nanoseconds are clamped, but never change the order of dates
+        @Override
+        public int compareTo(final SortKey other) {
+            if (from != other.from) {
+                return Long.compare(from, other.from);
+            }
+            if (to != other.to) {
+                return Long.compare(to, other.to);
+            }
+            return ENTRY_ORDER.compare(entry, other.entry);
+        }
+    }
+
+    static class Result {
+        // null when all the entries were accepted
+        final Rejection.BatchRejected rejection;
+        final List<Partition> rooms;
+        final List<Partition> doctors;
+
+        Result(final Rejection.BatchRejected rejection, final List<Partition> rooms, final List<Partition> doctors) {
+            this.rejection = rejection;
+            this.rooms = rooms;
+            this.doctors = doctors;
+        }
+    }
+
+    /**
+     * Entries of a single room or doctor. The tree is built (by the partition's task) just when nothing was rejected.
+     */
+    static class Partition {
+        // any of the entries: all of them share the room or the doctor
+        final ScheduleEntry key;
+        final List<ScheduleEntry> accepted;
+        final List<Map.Entry<ScheduleEntry, Rejection>> rejections = new ArrayList<>();
+        IntervalIndex index;
+        // used by the sweeps; for doctors it's the latest ending visit
+        private ScheduleEntry latestEnding;
+
+        private Partition(final List<ScheduleEntry> entries) {
+            this.key = entries.get(0);
+            this.accepted = new ArrayList<>(entries.size());
+        }
+
+        private void accept(final ScheduleEntry entry) {
+            accepted.add(entry);
+        }
+
+        private void reject(final ScheduleEntry entry, final Rejection reason) {
+            rejections.add(new SimpleImmutableEntry<>(entry, reason));
+        }
+
+        private Partition indexedIfAllAccepted(final ValueRegistry registry) {
+            if (rejections.isEmpty()) {
+                index = IntervalIndex.ofSorted(registry, accepted);
+            }
+            return this;
+        }
+    }
+}
@@ -1,140 +1,977 @@
 package io.github.mat3e.schedule.domain;
 
-import org.jetbrains.annotations.NotNull;
+import io.github.mat3e.schedule.domain.ScheduleOutcome.Rejection;
 
+import java.time.Duration;
+import java.time.Instant;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
-import static java.util.Collections.unmodifiableSet;
+import static java.util.Comparator.comparing;
+import static java.util.stream.Collectors.toUnmodifiableList;
 import static java.util.stream.Collectors.toUnmodifiableSet;
 
+/**
+ * Safe for concurrent use. Commands lock just the stripe of the room they are about - the room's tree is replaced only
+ * under that lock, while doctors' trees are updated atomically entry by entry. Visits read the doctor's entries of
+ * other rooms and replace several of them, so they also lock the doctor's stripe and never see another visit halfway.
+ * Doctors differ just by their specialization, so in practice that's a lock per clinic: visits run one at a time,
+ * while on calls of different rooms still run in parallel. Commands spanning many rooms (erase, batches) and snapshots
+ * take all the room stripes, which keeps out any command of a single room.
+ * <p>
+ * Recurring on calls are kept as rules per room, next to the trees. Their occurrences are computed when needed and
+ * become entries only when a visit splits them or an erase trims them.
+ */
 public class Schedule {
+    private static final int ROOM_STRIPES = 16;
+    private static final int DOCTOR_STRIPES = 16;
+    private static final Duration MAX_NANOS = Duration.ofNanos(Long.MAX_VALUE);
+
     private final UUID clinicId;
-    private final Set<Room> availableRooms = new HashSet<>();
-    private final Set<ScheduleEntry> entries = new HashSet<>();
+    private final ValueRegistry registry;
+    // indexes keep ids from the registry, so each schedule has its own empty one
+    private final IntervalIndex emptyIndex;
+    private final Set<Room> availableRooms;
+    // by room/doctor ids from the registry
+    private final Map<Integer, IntervalIndex> roomIndexes = new ConcurrentHashMap<>();
+    private final Map<Integer, IntervalIndex> doctorIndexes = new ConcurrentHashMap<>();
+    // by room ids; lists are replaced (never changed) under the room's lock
+    private final Map<Integer, List<RecurringOnCall>> recurringOnCalls = new ConcurrentHashMap<>();
+    private final StripedLock roomLocks = new StripedLock(ROOM_STRIPES);
+    // taken by visits, always after the room's stripe
+    private final StripedLock doctorLocks = new StripedLock(DOCTOR_STRIPES);
+    // since the schedule was created, loaded or saved; guarded by itself
+    private final List<ScheduleChange> changes = new ArrayList<>();
+    // changes forgotten once saved, so a change's sequence number stays the same while saves drop the older ones
+    private long savedChanges;
+    private final ScheduleMetrics metrics;
 
     Schedule(Collection<Room> clinicRooms) {
         this(UUID.randomUUID(), clinicRooms);
     }
 
     Schedule(UUID clinicId, Collection<Room> clinicRooms) {
+        this(clinicId, clinicRooms, ScheduleMetrics.NONE);
+    }
+
+    Schedule(UUID clinicId, Collection<Room> clinicRooms, ScheduleMetrics metrics) {
         this.clinicId = clinicId;
-        availableRooms.addAll(clinicRooms);
+        this.metrics = metrics;
+        this.registry = new ValueRegistry();
+        this.emptyIndex = IntervalIndex.empty(registry);
+        Set<Room> rooms = new HashSet<>();
+        clinicRooms.forEach(room -> rooms.add(registry.intern(room)));
+        this.availableRooms = Set.copyOf(rooms);
     }
 
-    public void scheduleOnCall(final ScheduleEntry newEntry) {
-        assertOnCall(newEntry);
-        assertAvailableDate(newEntry);
-        entries.add(newEntry);
+    private Schedule(final Schedule original, final boolean withPendingChanges) {
+        this.clinicId = original.clinicId;
+        this.registry = original.registry;
+        this.emptyIndex = original.emptyIndex;
+        this.availableRooms = original.availableRooms;
+        this.metrics = original.metrics;
+        original.roomLocks.runLockedAll(() -> {
+            roomIndexes.putAll(original.roomIndexes);
+            doctorIndexes.putAll(original.doctorIndexes);
+            recurringOnCalls.putAll(original.recurringOnCalls);
+            if (withPendingChanges) {
+                synchronized (original.changes) {
+                    changes.addAll(original.changes);
+                }
+            }
+        });
     }
 
-    public void scheduleVisit(final ScheduleEntry entry) {
-        assertPatientDefined(entry);
-        Set<ScheduleEntry> interferingEntries = findInterferingDoctorEntries(entry);
-        assertDoctorOnCall(interferingEntries);
-        assertInSameRoom(interferingEntries, entry.getRoom());
-        assertNoVisits(interferingEntries);
-        Set<ScheduleEntry> newEntries = entry.immerseInto$schedule(interferingEntries);
-        if (newEntries.equals(interferingEntries)) {
-            throw new NoDoctorOnCallException("Doctor's on calls are not fully aligned with the visit");
-        }
-        entries.removeAll(interferingEntries);
-        entries.addAll(newEntries);
+    public UUID getClinicId() {
+        return clinicId;
+    }
+
+    public void scheduleOnCall(final ScheduleEntry onCall) {
+        throwIfRejected(tryScheduleOnCall(onCall));
+    }
+
+    /**
+     * Same as {@link #scheduleOnCall(ScheduleEntry)}, but returns the rejection instead of throwing it - no stack
+     * trace to capture, so it suits the paths where rejections are common.
+     */
+    public ScheduleOutcome tryScheduleOnCall(final ScheduleEntry onCall) {
+        return metrics.recordCommand("scheduleOnCall", this, () -> scheduleOnCallUnmeasured(onCall));
+    }
+
+    /**
+     * Schedules the whole rota as a single rule. Each occurrence is checked the same way as a single on call - against
+     * the entries and the occurrences of other rotas in the room.
+     */
+    public void scheduleRecurringOnCall(final RecurringOnCall onCall) {
+        throwIfRejected(tryScheduleRecurringOnCall(onCall));
+    }
+
+    /**
+     * Same as {@link #scheduleRecurringOnCall(RecurringOnCall)}, but returns the rejection instead of throwing it.
+     */
+    public ScheduleOutcome tryScheduleRecurringOnCall(final RecurringOnCall onCall) {
+        return metrics.recordCommand("scheduleRecurringOnCall", this, () -> scheduleRecurringOnCallUnmeasured(onCall));
+    }
+
+    public void scheduleVisit(final ScheduleEntry visit) {
+        throwIfRejected(tryScheduleVisit(visit));
+    }
+
+    /**
+     * Same as {@link #scheduleVisit(ScheduleEntry)}, but returns the rejection instead of throwing it.
+     */
+    public ScheduleOutcome tryScheduleVisit(final ScheduleEntry visit) {
+        return metrics.recordCommand("scheduleVisit", this, () -> scheduleVisitUnmeasured(visit));
+    }
+
+    /**
+     * Schedules all the on calls or none of them. Entries are validated in the order of their start dates - against
+     * the existing entries and against the ones from the batch which were already accepted.
+     *
+     * @param newEntries on calls to schedule
+     * @throws BatchRejectedException with every rejected entry and the reason, when at least one rejected
+     */
+    public void scheduleOnCalls(final Collection<ScheduleEntry> newEntries) {
+        throwIfRejected(tryScheduleOnCalls(newEntries));
+    }
+
+    /**
+     * Same as {@link #scheduleOnCalls(Collection)}, but returns {@link Rejection.BatchRejected} instead of throwing.
+     */
+    public ScheduleOutcome tryScheduleOnCalls(final Collection<ScheduleEntry> newEntries) {
+        return metrics.recordCommand("scheduleOnCalls", this, () -> scheduleAtomically(newEntries, this::scheduleOnCallUnmeasured));
+    }
+
+    /**
+     * Schedules all the visits or none of them, same as {@link #scheduleOnCalls(Collection)}.
+     */
+    public void scheduleVisits(final Collection<ScheduleEntry> newEntries) {
+        throwIfRejected(tryScheduleVisits(newEntries));
+    }
+
+    /**
+     * Same as {@link #scheduleVisits(Collection)}, but returns {@link Rejection.BatchRejected} instead of throwing.
+     */
+    public ScheduleOutcome tryScheduleVisits(final Collection<ScheduleEntry> newEntries) {
+        return metrics.recordCommand("scheduleVisits", this, () -> scheduleAtomically(newEntries, this::scheduleVisitUnmeasured));
+    }
+
+    /**
+     * Imports a whole roster into a schedule with no entries yet - all the entries or none of them. Entries are taken
+     * as they are, with on calls already split around the visits (the way snapshots keep them); the same entry given
+     * twice counts once.
+     * <p>
+     * Rooms are validated in parallel on the given pool, then doctors are: entries must not interfere with other
+     * entries of their room, visits must not interfere with their doctor's entries in other rooms nor with the
+     * doctor's other visits. Of two conflicting entries, the one later in {@link RosterImport#ENTRY_ORDER} is rejected.
+     *
+     * @param roster entries to import
+     * @param pool   pool to validate the rooms and doctors on
+     * @throws BatchRejectedException with every rejected entry and the reason, in the order of the entries' dates
+     * @throws IllegalStateException  when the schedule already has entries or recurring on calls
+     */
+    public void importEntries(final Collection<ScheduleEntry> roster, final ForkJoinPool pool) {
+        throwIfRejected(tryImportEntries(roster, pool));
+    }
+
+    /**
+     * Same as {@link #importEntries(Collection, ForkJoinPool)}, but returns {@link Rejection.BatchRejected} instead of
+     * throwing.
+     */
+    public ScheduleOutcome tryImportEntries(final Collection<ScheduleEntry> roster, final ForkJoinPool pool) {
+        return metrics.recordCommand("importEntries", this, () -> roomLocks.callLockedAll(() -> importLocked(roster, pool)));
     }
 
     public void erase(final ZonedDateTime from, final ZonedDateTime to) {
-        var dummyEntry = ScheduleEntry.dummy(from, to);
-        Set<ScheduleEntry> interferingEntries = entries.stream()
-                .filter(entry -> entry.datesInterfereWith$schedule(dummyEntry))
-                .collect(toUnmodifiableSet());
-        assertEntriesPresent(interferingEntries);
-        Set<ScheduleEntry> newEntries = interferingEntries.stream()
-                .flatMap(entry -> entry.trimTo$schedule(dummyEntry).stream())
+        throwIfRejected(tryErase(from, to));
+    }
+
+    /**
+     * Same as {@link #erase(ZonedDateTime, ZonedDateTime)}, but returns the rejection instead of throwing it.
+     */
+    public ScheduleOutcome tryErase(final ZonedDateTime from, final ZonedDateTime to) {
+        return metrics.recordCommand("erase", this, () -> eraseUnmeasured(from, to));
+    }
+
+    /**
+     * Erases all the windows at once: overlapping and adjacent windows are merged, then each entry interfering with
+     * them is trimmed with the windows one by one, in the order of their start dates. Rejected only when no entry
+     * interferes with any of the windows.
+     */
+    public void erase(final Collection<TimeWindow> windows) {
+        throwIfRejected(tryErase(windows));
+    }
+
+    /**
+     * Same as {@link #erase(Collection)}, but just for the entries of the given room.
+     */
+    public void erase(final Collection<TimeWindow> windows, final Room room) {
+        throwIfRejected(tryErase(windows, room));
+    }
+
+    /**
+     * Same as {@link #erase(Collection)}, but just for the entries of the given doctor.
+     */
+    public void erase(final Collection<TimeWindow> windows, final Doctor doctor) {
+        throwIfRejected(tryErase(windows, doctor));
+    }
+
+    /**
+     * Same as {@link #erase(Collection)}, but returns the rejection instead of throwing it.
+     */
+    public ScheduleOutcome tryErase(final Collection<TimeWindow> windows) {
+        return metrics.recordCommand("eraseWindows", this, () -> eraseUnmeasured(windows, roomIndexes::values, rule -> true));
+    }
+
+    /**
+     * Same as {@link #erase(Collection, Room)}, but returns the rejection instead of throwing it.
+     */
+    public ScheduleOutcome tryErase(final Collection<TimeWindow> windows, final Room room) {
+        return metrics.recordCommand("eraseWindows", this, () -> eraseUnmeasured(
+                windows, () -> List.of(indexOf(room)), rule -> rule.getRoom().equals(room)));
+    }
+
+    /**
+     * Same as {@link #erase(Collection, Doctor)}, but returns the rejection instead of throwing it.
+     */
+    public ScheduleOutcome tryErase(final Collection<TimeWindow> windows, final Doctor doctor) {
+        return metrics.recordCommand("eraseWindows", this, () -> eraseUnmeasured(
+                windows, () -> List.of(indexOf(doctor)), rule -> rule.getDoctor().equals(doctor)));
+    }
+
+    /**
+     * Reads the schedule as it is at the moment of the call - later commands don't change the result. Entries are
+     * taken from the trees one by one, as the stream goes, and the ones outside the dates are not even visited.
+     *
+     * @return entries interfering with the given dates, in the order of their start dates
+     */
+    public Stream<ScheduleEntry> entriesBetween(final ZonedDateTime from, final ZonedDateTime to) {
+        var window = ScheduleEntry.dummy(from, to);
+        return roomLocks.callLockedAll(() -> ordered(roomIndexes.values(), allRecurringOnCalls(), window));
+    }
+
+    /**
+     * Same as {@link #entriesBetween(ZonedDateTime, ZonedDateTime)}, just for the given room.
+     */
+    public Stream<ScheduleEntry> entriesFor(final Room room, final ZonedDateTime from, final ZonedDateTime to) {
+        var window = ScheduleEntry.dummy(from, to);
+        return roomLocks.callLocked(room.hashCode(), () -> ordered(List.of(indexOf(room)), recurringOnCallsOf(room), window));
+    }
+
+    /**
+     * Same as {@link #entriesBetween(ZonedDateTime, ZonedDateTime)}, just for the given doctor. The doctor's entries
+     * come from many rooms, so it waits for commands of all of them.
+     */
+    public Stream<ScheduleEntry> entriesFor(final Doctor doctor, final ZonedDateTime from, final ZonedDateTime to) {
+        var window = ScheduleEntry.dummy(from, to);
+        return roomLocks.callLockedAll(() -> ordered(List.of(indexOf(doctor)), recurringOnCallsOf(doctor), window));
+    }
+
+    /**
+     * Doesn't wait for commands - each room is checked against its latest state. Costs O(log n) per room.
+     *
+     * @return rooms with no entries interfering with the given dates
+     */
+    public Set<Room> findFreeRooms(final ZonedDateTime from, final ZonedDateTime to) {
+        var slot = ScheduleEntry.dummy(from, to);
+        return availableRooms.stream()
+                .filter(room -> isFree(indexOf(room), slot) && findFirstOccurrence(recurringOnCallsOf(room), slot) == null)
                 .collect(toUnmodifiableSet());
-        entries.removeAll(interferingEntries);
-        entries.addAll(newEntries);
     }
 
+    /**
+     * Doesn't wait for commands, same as {@link #findFreeRooms(ZonedDateTime, ZonedDateTime)}. Costs O(log n) per
+     * room, thanks to the gaps known by the trees.
+     *
+     * @param duration length of the slot
+     * @param after    the earliest start of the slot
+     * @return the earliest slot in any of the rooms (the first room by name when many are free at the same time);
+     * empty if there are no rooms
+     */
+    public Optional<FreeSlot> findNextFreeSlot(final Duration duration, final ZonedDateTime after) {
+        assertPositive(duration);
+        long length = duration.compareTo(MAX_NANOS) > 0 ? Long.MAX_VALUE : duration.toNanos();
+        return availableRooms.stream()
+                .map(room -> findNextFreeSlot(room, duration, length, after))
+                .flatMap(Optional::stream)
+                .min(comparing(FreeSlot::getFrom).thenComparing(slot -> slot.getRoom().getName()));
+    }
+
+    /**
+     * Doesn't wait for commands - visits fit the returned windows as long as the doctor's entries don't change.
+     *
+     * @param doctor   doctor for the visit
+     * @param duration length of the visit
+     * @param from     the earliest start of the visit
+     * @param to       the latest end of the visit
+     * @return windows, in the order of their start dates, where {@link #scheduleVisit(ScheduleEntry)} accepts any visit
+     * of the given duration - windows are covered with the doctor's on calls from a single room, following each other
+     * and not interfering with any other entry of the doctor
+     */
+    public List<FreeSlot> findVisitSlots(final Doctor doctor, final Duration duration, final ZonedDateTime from, final ZonedDateTime to) {
+        assertPositive(duration);
+        var window = ScheduleEntry.dummy(from, to);
+        List<ScheduleEntry> doctorEntries = Stream.concat(
+                indexOf(doctor).findInterfering(window),
+                findOccurrences(recurringOnCallsOf(doctor), window).stream()
+        ).sorted(comparing(ScheduleEntry::getFrom)).collect(toUnmodifiableList());
+        List<FreeSlot> result = new ArrayList<>();
+        for (List<ScheduleEntry> onCalls : findFollowingOnCalls(doctorEntries)) {
+            var chainStart = onCalls.get(0).getFrom();
+            var chainEnd = onCalls.get(onCalls.size() - 1).getTo();
+            var room = onCalls.get(0).getRoom();
+            var windowStart = chainStart.compareTo(from) > 0 ? chainStart : from;
+            var windowEnd = chainEnd.compareTo(to) < 0 ? chainEnd : to;
+            Set<ScheduleEntry> chain = new HashSet<>(onCalls);
+            for (ScheduleEntry other : doctorEntries) {
+                var otherEnd = occupiedUntil(other);
+                if (chain.contains(other) || otherEnd.compareTo(windowStart) <= 0) {
+                    continue;
+                }
+                if (other.getFrom().compareTo(windowEnd) >= 0) {
+                    break;
+                }
+                // the visit can't interfere with any other entry of the doctor
+                addIfFits(result, room, windowStart, other.getFrom(), duration);
+                windowStart = otherEnd;
+            }
+            addIfFits(result, room, windowStart, windowEnd, duration);
+        }
+        result.sort(comparing(FreeSlot::getFrom).thenComparing(slot -> slot.getRoom().getName()));
+        return result;
+    }
+
+    /**
+     * Removes all the entries which ended by the given date, so long-lived schedules don't grow without bound.
+     * Entries which are still in progress stay untouched. Recurring on calls start over with their first occurrence
+     * which didn't end.
+     *
+     * @param date date to compare with the end of entries
+     * @return removed entries (and occurrences), e.g. to archive them
+     */
+    public Set<ScheduleEntry> evictEndedBy(final ZonedDateTime date) {
+        return metrics.recordChange("evictEndedBy", this, () -> roomLocks.callLockedAll(() -> {
+            Set<ScheduleEntry> ended = roomIndexes.values().stream()
+                    .flatMap(index -> index.findEndedBy(date).stream())
+                    .collect(toUnmodifiableSet());
+            ended.forEach(this::remove);
+            if (recurringOnCalls.isEmpty()) {
+                return ended;
+            }
+            Set<ScheduleEntry> result = new HashSet<>(ended);
+            recurringOnCalls.replaceAll((roomId, rules) -> {
+                List<RecurringOnCall> rest = new ArrayList<>(rules.size());
+                for (RecurringOnCall rule : rules) {
+                    result.addAll(rule.occurrencesEndedBy$schedule(date));
+                    RecurringOnCall notEnded = rule.withoutEndedBy$schedule(date);
+                    if (notEnded != null) {
+                        rest.add(notEnded);
+                    }
+                }
+                return List.copyOf(rest);
+            });
+            recurringOnCalls.values().removeIf(List::isEmpty);
+            return Set.copyOf(result);
+        }));
+    }
+
+    /**
+     * Takes O(rooms + doctors) time - the copy shares the (persistent) interval trees and the registry of values,
+     * but further changes to one of the schedules do not affect the other.
+     */
+    Schedule copy() {
+        return new Schedule(this, false);
+    }
+
+    /**
+     * Same as {@link #copy()}, but the copy also gets the changes which were not saved yet.
+     */
+    Schedule copyWithPendingChanges() {
+        return new Schedule(this, true);
+    }
+
+    void load(final Collection<ScheduleEntry> snapshotEntries) {
+        roomLocks.runLockedAll(() -> snapshotEntries.forEach(entry -> addToIndexes(registry.intern(entry))));
+    }
+
+    /**
+     * Same as {@link #load(Collection)}, for the recurring on calls - they are taken without any checks.
+     */
+    void loadRecurring(final Collection<RecurringOnCall> snapshotOnCalls) {
+        roomLocks.runLockedAll(() -> snapshotOnCalls.forEach(onCall -> addRecurring(registry.intern(onCall))));
+    }
+
+    int countEntries() {
+        return roomIndexes.values().stream().mapToInt(IntervalIndex::size).sum();
+    }
+
+    int largestRoomIndexSize() {
+        return roomIndexes.values().stream().mapToInt(IntervalIndex::size).max().orElse(0);
+    }
+
+    int largestDoctorIndexSize() {
+        return doctorIndexes.values().stream().mapToInt(IntervalIndex::size).max().orElse(0);
+    }
+
+    /**
+     * Takes O(rooms) time - the snapshot shares the (persistent) interval trees with the schedule.
+     */
     ScheduleSnapshot getSnapshot() {
-        return new ScheduleSnapshot(
-                clinicId,
-                unmodifiableSet(entries)
-        );
+        return roomLocks.callLockedAll(this::snapshotLocked);
     }
 
-    private void assertOnCall(final ScheduleEntry newEntry) {
-        if (newEntry.isVisit()) {
-            throw new OnCallWithPatientException();
+    /**
+     * @return changes made since the schedule was created, loaded or last saved, together with the state they lead to
+     */
+    PendingChanges getPendingChanges() {
+        return roomLocks.callLockedAll(() -> {
+            synchronized (changes) {
+                return new PendingChanges(List.copyOf(changes), snapshotLocked());
+            }
+        });
+    }
+
+    /**
+     * Forgets the given number of the oldest changes, once a repository saved them.
+     */
+    void changesSaved(final int count) {
+        synchronized (changes) {
+            changes.subList(0, count).clear();
+            savedChanges += count;
         }
     }
 
-    private void assertAvailableDate(final ScheduleEntry newEntry) {
-        Set<Room> interferingRooms = entries.stream()
-                .filter(existingVisit -> existingVisit.interferesWith(newEntry))
-                .map(ScheduleEntry::getRoom)
-                .collect(toUnmodifiableSet());
-        if (interferingRooms.size() > 0) {
-            availableRooms.stream()
-                    .filter(room -> !interferingRooms.contains(room))
-                    .findAny()
-                    .ifPresentOrElse(
-                            (potentialRoom) -> {
-                                throw new RoomAlreadyTakenException(newEntry.getRoom());
-                            },
-                            () -> {
-                                throw new DateAlreadyTakenException();
-                            }
-                    );
+    private ScheduleSnapshot snapshotLocked() {
+        return new ScheduleSnapshot(clinicId, new IndexedEntrySet(roomIndexes.values()), Set.copyOf(allRecurringOnCalls()));
+    }
+
+    // checked before interning, so a rejected on call is never copied with canonical values
+    private ScheduleOutcome scheduleOnCallUnmeasured(final ScheduleEntry onCall) {
+        if (onCall.isVisit()) {
+            return Rejection.OnCallWithPatient.INSTANCE;
         }
+        return roomLocks.callLocked(onCall.getRoom().hashCode(), () -> {
+            ScheduleEntry conflictingEntry = findFirstInterfering(onCall);
+            if (conflictingEntry != null) {
+                return rejectionFor(conflictingEntry);
+            }
+            add(registry.intern(onCall));
+            return ScheduleOutcome.Accepted.INSTANCE;
+        });
     }
 
-    private void assertPatientDefined(final ScheduleEntry entry) {
-        if (entry.getPatient() == null) {
-            throw new NoPatientException();
+    private ScheduleOutcome scheduleRecurringOnCallUnmeasured(final RecurringOnCall onCall) {
+        return roomLocks.callLocked(onCall.getRoom().hashCode(), () -> {
+            for (Iterator<ScheduleEntry> occurrences = onCall.occurrences$schedule(); occurrences.hasNext(); ) {
+                ScheduleEntry conflictingEntry = findFirstInterfering(occurrences.next());
+                if (conflictingEntry != null) {
+                    return rejectionFor(conflictingEntry);
+                }
+            }
+            addRecurring(registry.intern(onCall));
+            return ScheduleOutcome.Accepted.INSTANCE;
+        });
+    }
+
+    private ScheduleOutcome scheduleVisitUnmeasured(final ScheduleEntry visit) {
+        if (visit.getPatient() == null) {
+            return Rejection.NoPatient.INSTANCE;
         }
+        // entries to replace must be in the visit's room (checked below), the doctor's lock keeps the other rooms' entries
+        return visitLocked(visit.getRoom(), visit.getDoctor(), () -> {
+            IntervalIndex doctorIndex = indexOf(visit.getDoctor());
+            List<ScheduleEntry> occurrences = findOccurrences(recurringOnCallsOf(visit.getDoctor()), visit);
+            if (doctorIndex.findFirstInterfering(visit) == null && occurrences.isEmpty()) {
+                return Rejection.NoDoctorOnCall.INSTANCE;
+            }
+            Set<ScheduleEntry> interferingEntries = Stream.concat(doctorIndex.findInterfering(visit), occurrences.stream())
+                    .collect(toUnmodifiableSet());
+            Optional<Rejection> rejection = findRoomMismatch(interferingEntries, visit.getRoom())
+                    .or(() -> findVisit(interferingEntries));
+            if (rejection.isPresent()) {
+                return rejection.get();
+            }
+            Set<ScheduleEntry> newEntries = registry.intern(visit).immerseInto$schedule(interferingEntries);
+            if (newEntries.equals(interferingEntries)) {
+                return Rejection.OnCallsNotAligned.INSTANCE;
+            }
+            // occurrences are not in the trees, so removing them changes nothing
+            interferingEntries.forEach(this::remove);
+            occurrences.forEach(this::skip);
+            newEntries.forEach(this::add);
+            return ScheduleOutcome.Accepted.INSTANCE;
+        });
     }
 
-    @NotNull
-    private Set<ScheduleEntry> findInterferingDoctorEntries(final ScheduleEntry entry) {
-        return entries.stream()
-                .filter(onCall -> onCall.getDoctor().equals(entry.getDoctor()))
-                .filter(onCall -> onCall.datesInterfereWith$schedule(entry))
-                .collect(toUnmodifiableSet());
+    // stripes come from hashes, not ids - values not interned yet have no ids
+    private <T> T visitLocked(final Room room, final Doctor doctor, final Supplier<T> action) {
+        return roomLocks.callLocked(room.hashCode(), () -> doctorLocks.callLocked(doctor.hashCode(), action));
+    }
+
+    private ScheduleOutcome eraseUnmeasured(final ZonedDateTime from, final ZonedDateTime to) {
+        var dummyEntry = ScheduleEntry.dummy(from, to);
+        return roomLocks.callLockedAll(() -> {
+            List<ScheduleEntry> occurrences = findOccurrences(allRecurringOnCalls(), dummyEntry);
+            if (occurrences.isEmpty() && roomIndexes.values().stream().allMatch(index -> index.findFirstInterfering(dummyEntry) == null)) {
+                return Rejection.NothingToErase.INSTANCE;
+            }
+            Set<ScheduleEntry> interferingEntries = roomIndexes.values().stream()
+                    .flatMap(index -> index.findInterfering(dummyEntry))
+                    .collect(toUnmodifiableSet());
+            Set<ScheduleEntry> newEntries = new HashSet<>();
+            for (ScheduleEntry entry : interferingEntries) {
+                ScheduleEntry trimmed = entry.trimTo$schedule(dummyEntry);
+                if (trimmed != null) {
+                    newEntries.add(trimmed);
+                }
+            }
+            for (ScheduleEntry occurrence : occurrences) {
+                materializeIfTrimmed(occurrence, occurrence.trimTo$schedule(dummyEntry), newEntries);
+            }
+            interferingEntries.forEach(this::remove);
+            newEntries.forEach(this::add);
+            return ScheduleOutcome.Accepted.INSTANCE;
+        });
+    }
+
+    // indexes are taken with all the stripes locked
+    private ScheduleOutcome eraseUnmeasured(
+            final Collection<TimeWindow> windows,
+            final Supplier<Collection<IntervalIndex>> indexes,
+            final Predicate<RecurringOnCall> rules
+    ) {
+        List<ScheduleEntry> mergedWindows = mergeWindows(windows);
+        return roomLocks.callLockedAll(() -> {
+            Set<ScheduleEntry> interferingEntries = new HashSet<>();
+            for (IntervalIndex index : indexes.get()) {
+                mergedWindows.forEach(window -> index.findInterfering(window).forEach(interferingEntries::add));
+            }
+            List<RecurringOnCall> interferingRules = allRecurringOnCalls().stream().filter(rules).collect(toUnmodifiableList());
+            Set<ScheduleEntry> occurrences = new HashSet<>();
+            mergedWindows.forEach(window -> occurrences.addAll(findOccurrences(interferingRules, window)));
+            if (interferingEntries.isEmpty() && occurrences.isEmpty()) {
+                return Rejection.NothingToErase.INSTANCE;
+            }
+            Set<ScheduleEntry> newEntries = new HashSet<>();
+            for (ScheduleEntry entry : interferingEntries) {
+                ScheduleEntry trimmed = trimTo(entry, mergedWindows);
+                if (trimmed != null) {
+                    newEntries.add(trimmed);
+                }
+            }
+            for (ScheduleEntry occurrence : occurrences) {
+                materializeIfTrimmed(occurrence, trimTo(occurrence, mergedWindows), newEntries);
+            }
+            interferingEntries.forEach(this::remove);
+            newEntries.forEach(this::add);
+            return ScheduleOutcome.Accepted.INSTANCE;
+        });
+    }
+
+    private ScheduleOutcome scheduleAtomically(final Collection<ScheduleEntry> batch, final Function<ScheduleEntry, ScheduleOutcome> command) {
+        return roomLocks.callLockedAll(() -> scheduleAtomicallyLocked(batch, command));
+    }
+
+    // with all the stripes taken, nothing else changes the trees
+    private ScheduleOutcome scheduleAtomicallyLocked(final Collection<ScheduleEntry> batch, final Function<ScheduleEntry, ScheduleOutcome> command) {
+        Map<ScheduleEntry, Rejection> rejections = new LinkedHashMap<>();
+        Map<Integer, IntervalIndex> roomIndexesBefore = Map.copyOf(roomIndexes);
+        Map<Integer, IntervalIndex> doctorIndexesBefore = Map.copyOf(doctorIndexes);
+        Map<Integer, List<RecurringOnCall>> recurringOnCallsBefore = Map.copyOf(recurringOnCalls);
+        long changesBefore = changeSequence();
+        try {
+            batch.stream()
+                    .sorted(comparing(ScheduleEntry::getFrom))
+                    .forEach(entry -> {
+                        ScheduleOutcome outcome = command.apply(entry);
+                        if (outcome instanceof Rejection) {
+                            rejections.putIfAbsent(entry, (Rejection) outcome);
+                        }
+                    });
+        } catch (RuntimeException e) {
+            rollback(roomIndexesBefore, doctorIndexesBefore, recurringOnCallsBefore, changesBefore);
+            throw e;
+        }
+        if (!rejections.isEmpty()) {
+            rollback(roomIndexesBefore, doctorIndexesBefore, recurringOnCallsBefore, changesBefore);
+            return new Rejection.BatchRejected(rejections);
+        }
+        return ScheduleOutcome.Accepted.INSTANCE;
+    }
+
+    // trees are built by the partitions' tasks, so here they are just put in place
+    private ScheduleOutcome importLocked(final Collection<ScheduleEntry> roster, final ForkJoinPool pool) {
+        if (roomIndexes.values().stream().anyMatch(index -> !index.isEmpty()) || !recurringOnCalls.isEmpty()) {
+            throw new IllegalStateException("Entries can be imported just into an empty schedule");
+        }
+        if (roster.isEmpty()) {
+            return ScheduleOutcome.Accepted.INSTANCE;
+        }
+        RosterImport.Result result = new RosterImport(registry, this::rejectionFor, pool).validate(roster);
+        if (result.rejection != null) {
+            return result.rejection;
+        }
+        List<ScheduleChange> added = new ArrayList<>();
+        for (RosterImport.Partition room : result.rooms) {
+            roomIndexes.put(registry.idOf(room.key.getRoom()), room.index);
+            room.accepted.forEach(entry -> added.add(new ScheduleChange(entry, true)));
+        }
+        for (RosterImport.Partition doctor : result.doctors) {
+            doctorIndexes.put(registry.idOf(doctor.key.getDoctor()), doctor.index);
+        }
+        synchronized (changes) {
+            changes.addAll(added);
+        }
+        return ScheduleOutcome.Accepted.INSTANCE;
     }
 
-    private void assertDoctorOnCall(final Set<ScheduleEntry> interferingEntries) {
-        if (interferingEntries.isEmpty()) {
-            throw new NoDoctorOnCallException("No corresponding on call for this doctor");
+    // trees are persistent, so the previous versions are still intact
+    private void rollback(
+            final Map<Integer, IntervalIndex> roomIndexesBefore,
+            final Map<Integer, IntervalIndex> doctorIndexesBefore,
+            final Map<Integer, List<RecurringOnCall>> recurringOnCallsBefore,
+            final long changesBefore
+    ) {
+        roomIndexes.clear();
+        roomIndexes.putAll(roomIndexesBefore);
+        doctorIndexes.clear();
+        doctorIndexes.putAll(doctorIndexesBefore);
+        recurringOnCalls.clear();
+        recurringOnCalls.putAll(recurringOnCallsBefore);
+        // saves don't take the stripes - they might have dropped some older changes in the meantime
+        synchronized (changes) {
+            changes.subList((int) (changesBefore - savedChanges), changes.size()).clear();
         }
     }
 
-    private void assertInSameRoom(final Set<ScheduleEntry> interferingEntries, final Room room) {
-        Optional<Room> differentRoom = interferingEntries.stream()
-                .map(ScheduleEntry::getRoom)
-                .filter(interferingRoom -> !interferingRoom.equals(room))
-                .findAny();
-        if (differentRoom.isPresent()) {
-            throw new RoomMismatchException(differentRoom.get());
+    // sequence number of the next change
+    private long changeSequence() {
+        synchronized (changes) {
+            return savedChanges + changes.size();
         }
     }
 
-    private void assertNoVisits(final Set<ScheduleEntry> interferingEntries) {
-        Optional<Patient> otherPatient = interferingEntries.stream()
-                .filter(ScheduleEntry::isVisit)
-                .map(ScheduleEntry::getPatient)
-                .findAny();
-        if (otherPatient.isPresent()) {
-            throw new VisitAlreadyScheduledException(otherPatient.get());
+    // requires the lock of the entry's room (and of its doctor for visits), or all the room stripes
+    private void add(final ScheduleEntry entry) {
+        if (addToIndexes(entry)) {
+            record(new ScheduleChange(entry, true));
+        }
+    }
+
+    // requires the lock of the entry's room (and of its doctor for visits), or all the room stripes
+    private void remove(final ScheduleEntry entry) {
+        int roomId = registry.idOf(entry.getRoom());
+        IntervalIndex roomIndex = indexOf(entry.getRoom());
+        IntervalIndex updatedRoomIndex = roomIndex.without(entry);
+        if (updatedRoomIndex != roomIndex) {
+            roomIndexes.put(roomId, updatedRoomIndex);
+            doctorIndexes.compute(registry.idOf(entry.getDoctor()), (id, index) -> orEmpty(index).without(entry));
+            record(new ScheduleChange(entry, false));
+        }
+    }
+
+    // requires the lock of the entry's room (and of its doctor for visits), or all the room stripes
+    private boolean addToIndexes(final ScheduleEntry entry) {
+        int roomId = registry.idOf(entry.getRoom());
+        IntervalIndex roomIndex = indexOf(entry.getRoom());
+        IntervalIndex updatedRoomIndex = roomIndex.with(entry);
+        if (updatedRoomIndex == roomIndex) {
+            return false;
+        }
+        roomIndexes.put(roomId, updatedRoomIndex);
+        doctorIndexes.compute(registry.idOf(entry.getDoctor()), (id, index) -> orEmpty(index).with(entry));
+        return true;
+    }
+
+    // requires the lock of the rule's room
+    private void addRecurring(final RecurringOnCall rule) {
+        recurringOnCalls.merge(registry.idOf(rule.getRoom()), List.of(rule), (rules, added) -> {
+            List<RecurringOnCall> result = new ArrayList<>(rules);
+            result.addAll(added);
+            return List.copyOf(result);
+        });
+    }
+
+    // requires the lock of the occurrence's room; rules with no occurrences left are dropped
+    private void skip(final ScheduleEntry occurrence) {
+        recurringOnCalls.computeIfPresent(registry.idOf(occurrence.getRoom()), (roomId, rules) -> {
+            List<RecurringOnCall> result = new ArrayList<>(rules.size());
+            for (RecurringOnCall rule : rules) {
+                RecurringOnCall updated = rule.occursAs$schedule(occurrence) ? rule.skipping$schedule(occurrence) : rule;
+                if (updated != null) {
+                    result.add(updated);
+                }
+            }
+            return result.isEmpty() ? null : List.copyOf(result);
+        });
+    }
+
+    // trimming returns the very same entry when there is nothing to trim - such occurrences stay in their rules
+    private void materializeIfTrimmed(final ScheduleEntry occurrence, final ScheduleEntry trimmed, final Set<ScheduleEntry> newEntries) {
+        if (trimmed == occurrence) {
+            return;
+        }
+        skip(occurrence);
+        if (trimmed != null) {
+            newEntries.add(trimmed);
+        }
+    }
+
+    // requires the lock of the entry's room; null when nothing interferes
+    private ScheduleEntry findFirstInterfering(final ScheduleEntry entry) {
+        ScheduleEntry conflictingEntry = indexOf(entry.getRoom()).findFirstInterfering(entry);
+        return conflictingEntry != null ? conflictingEntry : findFirstOccurrence(recurringOnCallsOf(entry.getRoom()), entry);
+    }
+
+    private Rejection rejectionFor(final ScheduleEntry conflictingEntry) {
+        return isAnyOtherRoom(conflictingEntry.getRoom())
+                ? new Rejection.RoomAlreadyTaken(conflictingEntry)
+                : new Rejection.DateAlreadyTaken(conflictingEntry);
+    }
+
+    private List<RecurringOnCall> recurringOnCallsOf(final Room room) {
+        return recurringOnCalls.getOrDefault(registry.idOf(room), List.of());
+    }
+
+    // rotas are few compared to entries, so they are just filtered
+    private List<RecurringOnCall> recurringOnCallsOf(final Doctor doctor) {
+        List<RecurringOnCall> result = new ArrayList<>();
+        recurringOnCalls.values().forEach(rules -> rules.stream()
+                .filter(rule -> rule.getDoctor().equals(doctor))
+                .forEach(result::add));
+        return result;
+    }
+
+    private List<RecurringOnCall> allRecurringOnCalls() {
+        List<RecurringOnCall> result = new ArrayList<>();
+        recurringOnCalls.values().forEach(result::addAll);
+        return result;
+    }
+
+    private static List<ScheduleEntry> findOccurrences(final List<RecurringOnCall> rules, final ScheduleEntry entry) {
+        List<ScheduleEntry> result = new ArrayList<>();
+        for (RecurringOnCall rule : rules) {
+            rule.occurrencesInterferingWith$schedule(entry).forEachRemaining(result::add);
+        }
+        return result;
+    }
+
+    // null when nothing interferes
+    private static ScheduleEntry findFirstOccurrence(final List<RecurringOnCall> rules, final ScheduleEntry entry) {
+        for (int i = 0; i < rules.size(); i++) {
+            Iterator<ScheduleEntry> occurrences = rules.get(i).occurrencesInterferingWith$schedule(entry);
+            if (occurrences.hasNext()) {
+                return occurrences.next();
+            }
+        }
+        return null;
+    }
+
+    private void record(final ScheduleChange change) {
+        synchronized (changes) {
+            changes.add(change);
         }
     }
 
-    private void assertEntriesPresent(final Set<ScheduleEntry> entriesToErase) {
-        if (entriesToErase.isEmpty()) {
-            throw new NothingToEraseException();
+    // on calls of the same room where each starts exactly when the previous one ends, as ScheduleEntry.immerseInto expects;
+    // on calls with no length are left out - whether immerseInto accepts them depends on the order of equal starts
+    private static List<List<ScheduleEntry>> findFollowingOnCalls(final List<ScheduleEntry> entriesByStart) {
+        List<List<ScheduleEntry>> result = new ArrayList<>();
+        Map<Room, List<ScheduleEntry>> lastPerRoom = new HashMap<>();
+        for (ScheduleEntry entry : entriesByStart) {
+            if (entry.isVisit() || entry.getFrom().equals(entry.getTo())) {
+                continue;
+            }
+            List<ScheduleEntry> onCalls = lastPerRoom.get(entry.getRoom());
+            if (onCalls == null || !onCalls.get(onCalls.size() - 1).getTo().equals(entry.getFrom())) {
+                onCalls = new ArrayList<>();
+                result.add(onCalls);
+                lastPerRoom.put(entry.getRoom(), onCalls);
+            }
+            onCalls.add(entry);
+        }
+        return result;
+    }
+
+    // sorted by start, neither overlapping nor adjacent; as dummy entries, ready for ScheduleEntry.trimTo
+    private static List<ScheduleEntry> mergeWindows(final Collection<TimeWindow> windows) {
+        List<ScheduleEntry> result = new ArrayList<>();
+        ZonedDateTime from = null;
+        ZonedDateTime to = null;
+        for (TimeWindow window : windows.stream().sorted(comparing(TimeWindow::getFrom)).collect(toUnmodifiableList())) {
+            if (to != null && window.getFrom().compareTo(to) <= 0) {
+                to = window.getTo().compareTo(to) > 0 ? window.getTo() : to;
+                continue;
+            }
+            if (to != null) {
+                result.add(ScheduleEntry.dummy(from, to));
+            }
+            from = window.getFrom();
+            to = window.getTo();
+        }
+        if (to != null) {
+            result.add(ScheduleEntry.dummy(from, to));
+        }
+        return result;
+    }
+
+    // merged windows end in the same order as they start, so the search starts with the first one not ending before
+    // the entry and stops at the first one starting after it; null when nothing is left
+    private static ScheduleEntry trimTo(final ScheduleEntry entry, final List<ScheduleEntry> mergedWindows) {
+        ScheduleEntry result = entry;
+        for (int i = firstEndingAtOrAfter(mergedWindows, entry.getFrom()); i < mergedWindows.size() && result != null; i++) {
+            ScheduleEntry window = mergedWindows.get(i);
+            if (window.getFrom().compareTo(result.getTo()) > 0) {
+                break;
+            }
+            if (result.datesInterfereWith$schedule(window)) {
+                result = result.trimTo$schedule(window);
+            }
+        }
+        return result;
+    }
+
+    private static int firstEndingAtOrAfter(final List<ScheduleEntry> mergedWindows, final ZonedDateTime date) {
+        int low = 0;
+        int high = mergedWindows.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mergedWindows.get(middle).getTo().compareTo(date) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    // entries with no length still interfere with anything around them
+    static ZonedDateTime occupiedUntil(final ScheduleEntry entry) {
+        return entry.getTo().compareTo(entry.getFrom()) > 0 ? entry.getTo() : entry.getTo().plusNanos(1);
+    }
+
+    private static void addIfFits(
+            final List<FreeSlot> slots,
+            final Room room,
+            final ZonedDateTime from,
+            final ZonedDateTime to,
+            final Duration duration
+    ) {
+        if (from.plus(duration).compareTo(to) <= 0) {
+            slots.add(new FreeSlot(room, from, to));
+        }
+    }
+
+    // the tree compares epoch nanos, so each found gap is double-checked with the entries
+    private Optional<FreeSlot> findNextFreeSlot(final Room room, final Duration duration, final long length, final ZonedDateTime after) {
+        IntervalIndex index = indexOf(room);
+        long afterNanos = IntervalIndex.toEpochNanos(after);
+        long candidate = afterNanos;
+        while (true) {
+            long start = index.findGapStart(candidate, length);
+            if (start > Long.MAX_VALUE - length) {
+                // beyond the dates the tree can tell apart
+                return Optional.empty();
+            }
+            var from = start == afterNanos ? after : ZonedDateTime.ofInstant(Instant.ofEpochSecond(0, start), after.getZone());
+            var slot = ScheduleEntry.dummy(from, from.plus(duration));
+            if (!isFree(index, slot)) {
+                candidate = start + 1;
+                continue;
+            }
+            ScheduleEntry occurrence = findFirstOccurrence(recurringOnCallsOf(room), slot);
+            if (occurrence == null) {
+                return Optional.of(new FreeSlot(room, slot.getFrom(), slot.getTo()));
+            }
+            // occurrences are not in the tree, so the search goes on right after the one in the way
+            candidate = IntervalIndex.toEpochNanos(occurrence.getTo());
+        }
+    }
+
+    private static Stream<ScheduleEntry> ordered(
+            final Collection<IntervalIndex> indexes,
+            final List<RecurringOnCall> rules,
+            final ScheduleEntry window
+    ) {
+        if (rules.isEmpty()) {
+            return ordered(IntervalIndex.iterateInterfering(indexes, window));
+        }
+        List<Iterator<ScheduleEntry>> sources = new ArrayList<>();
+        indexes.forEach(index -> sources.add(index.iterateInterfering(window)));
+        rules.forEach(rule -> sources.add(rule.occurrencesInterferingWith$schedule(window)));
+        return ordered(IntervalIndex.merge(sources));
+    }
+
+    private static Stream<ScheduleEntry> ordered(final Iterator<ScheduleEntry> entries) {
+        return StreamSupport.stream(
+                Spliterators.spliteratorUnknownSize(entries, Spliterator.ORDERED | Spliterator.NONNULL | Spliterator.IMMUTABLE),
+                false
+        );
+    }
+
+    private static boolean isFree(final IntervalIndex index, final ScheduleEntry slot) {
+        return index.findFirstInterfering(slot) == null;
+    }
+
+    private IntervalIndex indexOf(final Room room) {
+        return roomIndexes.getOrDefault(registry.idOf(room), emptyIndex);
+    }
+
+    private IntervalIndex indexOf(final Doctor doctor) {
+        return doctorIndexes.getOrDefault(registry.idOf(doctor), emptyIndex);
+    }
+
+    private IntervalIndex orEmpty(final IntervalIndex index) {
+        return index == null ? emptyIndex : index;
+    }
+
+    private static void assertPositive(final Duration duration) {
+        if (duration.isNegative() || duration.isZero()) {
+            throw new IllegalArgumentException("Duration should be positive, got " + duration);
+        }
+    }
+
+    // when the clinic has other rooms, it's just the chosen one which is taken
+    private boolean isAnyOtherRoom(final Room room) {
+        return availableRooms.size() > (availableRooms.contains(room) ? 1 : 0);
+    }
+
+    private static Optional<Rejection> findRoomMismatch(final Set<ScheduleEntry> interferingEntries, final Room room) {
+        return interferingEntries.stream()
+                .filter(interferingEntry -> !interferingEntry.getRoom().equals(room))
+                .findAny()
+                .map(Rejection.RoomMismatch::new);
+    }
+
+    private static Optional<Rejection> findVisit(final Set<ScheduleEntry> interferingEntries) {
+        return interferingEntries.stream()
+                .filter(ScheduleEntry::isVisit)
+                .findAny()
+                .map(Rejection.VisitAlreadyScheduled::new);
+    }
+
+    private static void throwIfRejected(final ScheduleOutcome outcome) {
+        if (outcome instanceof Rejection) {
+            throw ((Rejection) outcome).toException$schedule();
         }
     }
 }
@@ -0,0 +1,60 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static java.util.stream.Collectors.toUnmodifiableList;
+
+/**
+ * Schedules stored in {@code schedule.directory} as event logs, with the most recently used ones cached in front of
+ * them. Rooms come from {@code schedule.rooms}, unless the application has a {@link RoomRepository} of its own.
+ * <p>
+ * Metrics go to the application's {@link MeterRegistry}, or nowhere when there is none.
+ */
+@Configuration(proxyBeanMethods = false)
+class ScheduleConfiguration {
+    @Bean
+    @ConditionalOnMissingBean(RoomRepository.class)
+    RoomRepository roomRepository(@Value("${schedule.rooms:}") final String[] rooms) {
+        List<Room> result = Arrays.stream(rooms).map(Room::new).collect(toUnmodifiableList());
+        return () -> result;
+    }
+
+    @Bean
+    ScheduleFactory scheduleFactory(final RoomRepository roomRepository, final ObjectProvider<MeterRegistry> registry) {
+        MeterRegistry meterRegistry = registry.getIfAvailable();
+        return new ScheduleFactory(roomRepository, meterRegistry == null ? ScheduleMetrics.NONE : new ScheduleMetrics(meterRegistry));
+    }
+
+    @Bean
+    EventLogScheduleRepository eventLogScheduleRepository(
+            final ScheduleFactory scheduleFactory,
+            @Value("${schedule.directory:schedules}") final String directory
+    ) {
+        return new EventLogScheduleRepository(Path.of(directory), scheduleFactory);
+    }
+
+    @Bean
+    CachingScheduleRepository cachingScheduleRepository(
+            final EventLogScheduleRepository eventLog,
+            final ObjectProvider<MeterRegistry> registry,
+            @Value("${schedule.cache.max-size:1000}") final int maxSize,
+            @Value("${schedule.cache.write-behind-saves:0}") final int writeBehindSaves
+    ) {
+        return new CachingScheduleRepository(eventLog, maxSize, writeBehindSaves, meterRegistry(registry));
+    }
+
+    // with no registries of its own, a composite one records nothing
+    static MeterRegistry meterRegistry(final ObjectProvider<MeterRegistry> registry) {
+        return registry.getIfAvailable(CompositeMeterRegistry::new);
+    }
+}
@@ -1,19 +1,77 @@
 package io.github.mat3e.schedule.domain;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static java.util.Comparator.comparing;
+
 class ScheduleFactory {
     private final RoomRepository roomRepository;
+    private final ScheduleMetrics metrics;
 
     ScheduleFactory(final RoomRepository roomRepository) {
+        this(roomRepository, ScheduleMetrics.NONE);
+    }
+
+    ScheduleFactory(final RoomRepository roomRepository, final ScheduleMetrics metrics) {
         this.roomRepository = roomRepository;
+        this.metrics = metrics;
     }
 
     Schedule create() {
-        return new Schedule(roomRepository.findAll());
+        return metrics.recordFactory("create", () -> new Schedule(UUID.randomUUID(), roomRepository.findAll(), metrics));
     }
 
     Schedule restore(ScheduleSnapshot snapshot) {
-        var result = new Schedule(snapshot.getClinicId(), roomRepository.findAll());
-        snapshot.getEntries().forEach(result::scheduleOnCall);
+        return metrics.recordFactory("restore", () -> {
+            assertNoRoomOverlaps(withOccurrences(snapshot));
+            return restoreUnmeasured(snapshot);
+        });
+    }
+
+    /**
+     * Loads entries as they are, without any validation. Meant for snapshots taken from {@link Schedule#getSnapshot()}.
+     */
+    Schedule restoreTrusted(ScheduleSnapshot snapshot) {
+        return metrics.recordFactory("restoreTrusted", () -> restoreUnmeasured(snapshot));
+    }
+
+    private Schedule restoreUnmeasured(ScheduleSnapshot snapshot) {
+        var result = new Schedule(snapshot.getClinicId(), roomRepository.findAll(), metrics);
+        result.load(snapshot.getEntries());
+        result.loadRecurring(snapshot.getRecurringOnCalls());
+        metrics.observe(result);
+        return result;
+    }
+
+    // occurrences are checked like any other entries
+    private static Collection<ScheduleEntry> withOccurrences(ScheduleSnapshot snapshot) {
+        if (snapshot.getRecurringOnCalls().isEmpty()) {
+            return snapshot.getEntries();
+        }
+        List<ScheduleEntry> result = new ArrayList<>(snapshot.getEntries());
+        snapshot.getRecurringOnCalls().forEach(onCall -> onCall.occurrences$schedule().forEachRemaining(result::add));
         return result;
     }
+
+    // single sweep: each entry is compared with the latest ending one which started before it in the same room;
+    // entries with no length count as lasting a nanosecond, so the ones starting right at them are still compared
+    private static void assertNoRoomOverlaps(Collection<ScheduleEntry> entries) {
+        Map<Room, ScheduleEntry> latestEndingPerRoom = new HashMap<>();
+        entries.stream()
+                .sorted(comparing(ScheduleEntry::getFrom))
+                .forEach(entry -> {
+                    var previous = latestEndingPerRoom.get(entry.getRoom());
+                    if (previous != null && previous.interferesWith(entry)) {
+                        throw new IllegalArgumentException("Entries " + previous + " and " + entry + " overlap");
+                    }
+                    if (previous == null || Schedule.occupiedUntil(entry).isAfter(Schedule.occupiedUntil(previous))) {
+                        latestEndingPerRoom.put(entry.getRoom(), entry);
+                    }
+                });
+    }
 }
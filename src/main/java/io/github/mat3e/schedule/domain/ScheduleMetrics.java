@@ -0,0 +1,177 @@
+package io.github.mat3e.schedule.domain;
+
+import io.github.mat3e.schedule.domain.ScheduleOutcome.Rejection;
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+
+import java.lang.ref.WeakReference;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Meters of schedules and the factory:
+ * <ul>
+ * <li>{@code schedule.commands} - timer per operation and outcome (accepted, rejected, failed)</li>
+ * <li>{@code schedule.rejections} - counter per operation and reason (rejection type); batches count every rejected
+ * entry with its own reason</li>
+ * <li>{@code schedule.factory} - timer per factory operation</li>
+ * <li>{@code schedule.entries}, {@code schedule.index.largest} - gauges per clinic, following the schedule which was
+ * changed most recently; many copies of the same clinic's schedule can be in use. The schedule is held weakly, so the
+ * gauges never keep it in memory - once it's gone, they report NaN until the clinic's next command</li>
+ * </ul>
+ * Clinic ids are the only per-aggregate tags, so the number of meters grows with clinics, not with commands. Meters of
+ * commands are looked up once per operation, so recording them allocates nothing.
+ */
+class ScheduleMetrics {
+    // used by default, so it follows no schedules
+    static final ScheduleMetrics NONE = new ScheduleMetrics(new CompositeMeterRegistry(), false);
+
+    private final MeterRegistry registry;
+    private final Clock clock;
+    private final ConcurrentMap<String, CommandMeters> commands = new ConcurrentHashMap<>();
+    private final ConcurrentMap<UUID, LatestSchedule> clinics = new ConcurrentHashMap<>();
+    private final boolean observing;
+
+    ScheduleMetrics(final MeterRegistry registry) {
+        this(registry, true);
+    }
+
+    private ScheduleMetrics(final MeterRegistry registry, final boolean observing) {
+        this.registry = registry;
+        this.clock = registry.config().clock();
+        this.observing = observing;
+    }
+
+    ScheduleOutcome recordCommand(final String operation, final Schedule schedule, final Supplier<ScheduleOutcome> command) {
+        CommandMeters meters = metersOf(operation);
+        long start = clock.monotonicTime();
+        Timer timer = meters.failed;
+        try {
+            ScheduleOutcome result = command.get();
+            if (result instanceof Rejection) {
+                timer = meters.rejected;
+                meters.countRejection((Rejection) result);
+            } else {
+                timer = meters.accepted;
+            }
+            return result;
+        } finally {
+            timer.record(clock.monotonicTime() - start, NANOSECONDS);
+            observe(schedule);
+        }
+    }
+
+    /**
+     * Same as {@link #recordCommand(String, Schedule, Supplier)}, for the changes which cannot be rejected.
+     */
+    <T> T recordChange(final String operation, final Schedule schedule, final Supplier<T> change) {
+        CommandMeters meters = metersOf(operation);
+        long start = clock.monotonicTime();
+        Timer timer = meters.failed;
+        try {
+            T result = change.get();
+            timer = meters.accepted;
+            return result;
+        } finally {
+            timer.record(clock.monotonicTime() - start, NANOSECONDS);
+            observe(schedule);
+        }
+    }
+
+    <T> T recordFactory(final String operation, final Supplier<T> action) {
+        return registry.timer("schedule.factory", "operation", operation).record(action);
+    }
+
+    void observe(final Schedule schedule) {
+        if (!observing) {
+            return;
+        }
+        LatestSchedule latest = clinics.get(schedule.getClinicId());
+        if (latest == null) {
+            latest = clinics.computeIfAbsent(schedule.getClinicId(), clinicId -> registerGauges(clinicId, schedule));
+        }
+        latest.follow(schedule);
+    }
+
+    private CommandMeters metersOf(final String operation) {
+        CommandMeters meters = commands.get(operation);
+        return meters != null ? meters : commands.computeIfAbsent(operation, CommandMeters::new);
+    }
+
+    private LatestSchedule registerGauges(final UUID clinicId, final Schedule schedule) {
+        var latest = new LatestSchedule(schedule);
+        String clinic = clinicId.toString();
+        Gauge.builder("schedule.entries", latest, gauged -> gauged.measure(Schedule::countEntries))
+                .tag("clinic", clinic)
+                .register(registry);
+        Gauge.builder("schedule.index.largest", latest, gauged -> gauged.measure(Schedule::largestRoomIndexSize))
+                .tag("clinic", clinic)
+                .tag("index", "room")
+                .register(registry);
+        Gauge.builder("schedule.index.largest", latest, gauged -> gauged.measure(Schedule::largestDoctorIndexSize))
+                .tag("clinic", clinic)
+                .tag("index", "doctor")
+                .register(registry);
+        return latest;
+    }
+
+    private class CommandMeters {
+        private final String operation;
+        private final Timer accepted;
+        private final Timer rejected;
+        private final Timer failed;
+        private final ConcurrentMap<Class<?>, Counter> rejections = new ConcurrentHashMap<>();
+
+        CommandMeters(final String operation) {
+            this.operation = operation;
+            this.accepted = timerOf("accepted");
+            this.rejected = timerOf("rejected");
+            this.failed = timerOf("failed");
+        }
+
+        void countRejection(final Rejection rejection) {
+            if (rejection instanceof Rejection.BatchRejected) {
+                ((Rejection.BatchRejected) rejection).getRejections().values().forEach(this::countRejection);
+                return;
+            }
+            Counter counter = rejections.get(rejection.getClass());
+            if (counter == null) {
+                counter = rejections.computeIfAbsent(rejection.getClass(), reason -> registry.counter(
+                        "schedule.rejections", "operation", operation, "reason", reason.getSimpleName()));
+            }
+            counter.increment();
+        }
+
+        private Timer timerOf(final String outcome) {
+            return registry.timer("schedule.commands", "operation", operation, "outcome", outcome);
+        }
+    }
+
+    private static class LatestSchedule {
+        private volatile WeakReference<Schedule> schedule;
+
+        LatestSchedule(final Schedule schedule) {
+            follow(schedule);
+        }
+
+        void follow(final Schedule schedule) {
+            if (this.schedule == null || this.schedule.get() != schedule) {
+                this.schedule = new WeakReference<>(schedule);
+            }
+        }
+
+        double measure(final ToIntFunction<Schedule> meter) {
+            Schedule current = schedule.get();
+            return current == null ? Double.NaN : meter.applyAsInt(current);
+        }
+    }
+}
@@ -1,9 +1,23 @@
 package io.github.mat3e.schedule.domain;
 
+import java.util.Optional;
 import java.util.UUID;
 
 public interface ScheduleRepository {
-    void findBy(UUID clinicId);
+    /**
+     * Version to save a schedule which was never saved before.
+     */
+    long NO_VERSION = 0;
 
-    void save(Schedule schedule);
+    Optional<VersionedSchedule> findBy(UUID clinicId);
+
+    /**
+     * Saves the schedule only if nobody saved another version in the meantime.
+     *
+     * @param schedule        schedule to save
+     * @param expectedVersion version the schedule was loaded with or {@link #NO_VERSION} for a new schedule
+     * @return new version of the schedule
+     * @throws ScheduleVersionConflictException when the stored version is different from the expected one
+     */
+    long save(Schedule schedule, long expectedVersion);
 }
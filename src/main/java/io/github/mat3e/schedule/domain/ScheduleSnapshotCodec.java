@@ -0,0 +1,265 @@
+package io.github.mat3e.schedule.domain;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+/**
+ * Binary format of {@link ScheduleSnapshot}:
+ * <pre>
+ * magic, format version, clinic id
+ * dictionaries: doctors, rooms, patients, zones
+ * entries: start - as a difference from the previous entry's start, end - as a difference from the start,
+ *          zones, doctor, room and patient - as positions in the dictionaries
+ * recurring on calls: start, then end, end of the rota and skipped starts - as differences from the start,
+ *                     doctor and room - as positions in the dictionaries, days between the occurrences
+ * </pre>
+ * Snapshots in the first version of the format (without recurring on calls) are still read.
+ * Numbers are written as variable-length integers, so a typical entry takes around a dozen bytes. Decoding reads
+ * straight from the given buffer (e.g. a memory-mapped file) without copying it first.
+ */
+class ScheduleSnapshotCodec {
+    static final int FORMAT_VERSION = 2;
+
+    private static final int FORMAT_VERSION_WITHOUT_RECURRING = 1;
+    private static final int MAGIC = 0x53434844;
+    private static final int NO_PATIENT = 0;
+
+    private ScheduleSnapshotCodec() {
+    }
+
+    /**
+     * @return buffer ready to be read (or written to a channel)
+     */
+    static ByteBuffer encode(final ScheduleSnapshot snapshot) {
+        Map<Doctor, Integer> doctors = new LinkedHashMap<>();
+        Map<Room, Integer> rooms = new LinkedHashMap<>();
+        Map<Patient, Integer> patients = new LinkedHashMap<>();
+        Map<ZoneId, Integer> zones = new LinkedHashMap<>();
+
+        // single pass - dictionaries are filled while writing the entries
+        var entries = new Output(16 * snapshot.getEntries().size());
+        entries.writeVarLong(snapshot.getEntries().size());
+        long previousStart = 0;
+        for (ScheduleEntry entry : snapshot.getEntries()) {
+            long start = entry.getFrom().toEpochSecond();
+            long end = entry.getTo().toEpochSecond();
+            entries.writeSignedVarLong(start - previousStart);
+            entries.writeVarLong(entry.getFrom().getNano());
+            entries.writeSignedVarLong(end - start);
+            entries.writeVarLong(entry.getTo().getNano());
+            entries.writeVarLong(positionOf(entry.getFrom().getZone(), zones));
+            entries.writeVarLong(positionOf(entry.getTo().getZone(), zones));
+            entries.writeVarLong(positionOf(entry.getDoctor(), doctors));
+            entries.writeVarLong(positionOf(entry.getRoom(), rooms));
+            entries.writeVarLong(entry.getPatient() == null ? NO_PATIENT : positionOf(entry.getPatient(), patients) + 1);
+            previousStart = start;
+        }
+        entries.writeVarLong(snapshot.getRecurringOnCalls().size());
+        for (RecurringOnCall onCall : snapshot.getRecurringOnCalls()) {
+            long start = onCall.getFrom().toEpochSecond();
+            writeDate(entries, onCall.getFrom(), 0, zones);
+            writeDate(entries, onCall.getTo(), start, zones);
+            entries.writeVarLong(positionOf(onCall.getDoctor(), doctors));
+            entries.writeVarLong(positionOf(onCall.getRoom(), rooms));
+            entries.writeVarLong(onCall.getEvery().getDays());
+            writeDate(entries, onCall.getUntil(), start, zones);
+            entries.writeVarLong(onCall.getSkipped().size());
+            onCall.getSkipped().forEach(skipped -> writeDate(entries, skipped, start, zones));
+        }
+
+        var out = new Output(64 + entries.size);
+        out.writeInt(MAGIC);
+        out.writeByte(FORMAT_VERSION);
+        out.writeLong(snapshot.getClinicId().getMostSignificantBits());
+        out.writeLong(snapshot.getClinicId().getLeastSignificantBits());
+        out.writeVarLong(doctors.size());
+        doctors.keySet().forEach(doctor -> out.writeString(doctor.getSpecialization().name()));
+        out.writeVarLong(rooms.size());
+        rooms.keySet().forEach(room -> out.writeString(room.getName()));
+        out.writeVarLong(patients.size());
+        patients.keySet().forEach(patient -> out.writeString(patient.getName()));
+        out.writeVarLong(zones.size());
+        zones.keySet().forEach(zone -> out.writeString(zone.getId()));
+        out.writeBytes(entries.bytes, entries.size);
+        return out.toBuffer();
+    }
+
+    /**
+     * Reads a snapshot starting at the buffer's position and moves the position right after it.
+     *
+     * @throws IllegalArgumentException when the buffer doesn't start with a snapshot in a supported version
+     */
+    static ScheduleSnapshot decode(final ByteBuffer buffer) {
+        if (buffer.getInt() != MAGIC) {
+            throw new IllegalArgumentException("Not a schedule snapshot");
+        }
+        int version = buffer.get();
+        if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_RECURRING) {
+            throw new IllegalArgumentException("Unsupported snapshot format version " + version);
+        }
+        var clinicId = new UUID(buffer.getLong(), buffer.getLong());
+        var doctors = new Doctor[readSize(buffer)];
+        Arrays.setAll(doctors, i -> new Doctor(Specialization.valueOf(readString(buffer))));
+        var rooms = new Room[readSize(buffer)];
+        Arrays.setAll(rooms, i -> new Room(readString(buffer)));
+        var patients = new Patient[readSize(buffer)];
+        Arrays.setAll(patients, i -> new Patient(readString(buffer)));
+        var zones = new ZoneId[readSize(buffer)];
+        Arrays.setAll(zones, i -> ZoneId.of(readString(buffer)));
+
+        int size = readSize(buffer);
+        Set<ScheduleEntry> entries = new HashSet<>(Math.max(16, (int) (size / .75f) + 1));
+        long start = 0;
+        for (int i = 0; i < size; i++) {
+            start += readSignedVarLong(buffer);
+            int startNano = (int) readVarLong(buffer);
+            long end = start + readSignedVarLong(buffer);
+            int endNano = (int) readVarLong(buffer);
+            var from = ZonedDateTime.ofInstant(Instant.ofEpochSecond(start, startNano), zones[readSize(buffer)]);
+            var to = ZonedDateTime.ofInstant(Instant.ofEpochSecond(end, endNano), zones[readSize(buffer)]);
+            var doctor = doctors[readSize(buffer)];
+            var room = rooms[readSize(buffer)];
+            int patient = readSize(buffer);
+            entries.add(new ScheduleEntry(doctor, from, to, room, patient == NO_PATIENT ? null : patients[patient - 1]));
+        }
+        if (version == FORMAT_VERSION_WITHOUT_RECURRING) {
+            return new ScheduleSnapshot(clinicId, entries);
+        }
+        Set<RecurringOnCall> recurringOnCalls = new HashSet<>();
+        for (int i = readSize(buffer); i > 0; i--) {
+            var from = readDate(buffer, 0, zones);
+            long rotaStart = from.toEpochSecond();
+            var to = readDate(buffer, rotaStart, zones);
+            var doctor = doctors[readSize(buffer)];
+            var room = rooms[readSize(buffer)];
+            var every = Period.ofDays(readSize(buffer));
+            var until = readDate(buffer, rotaStart, zones);
+            Set<ZonedDateTime> skipped = new HashSet<>();
+            for (int j = readSize(buffer); j > 0; j--) {
+                skipped.add(readDate(buffer, rotaStart, zones));
+            }
+            recurringOnCalls.add(new RecurringOnCall(doctor, from, to, room, every, until, skipped));
+        }
+        return new ScheduleSnapshot(clinicId, entries, recurringOnCalls);
+    }
+
+    // seconds as a difference from the given base
+    private static void writeDate(final Output out, final ZonedDateTime date, final long base, final Map<ZoneId, Integer> zones) {
+        out.writeSignedVarLong(date.toEpochSecond() - base);
+        out.writeVarLong(date.getNano());
+        out.writeVarLong(positionOf(date.getZone(), zones));
+    }
+
+    private static ZonedDateTime readDate(final ByteBuffer buffer, final long base, final ZoneId[] zones) {
+        long seconds = base + readSignedVarLong(buffer);
+        int nanos = (int) readVarLong(buffer);
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), zones[readSize(buffer)]);
+    }
+
+    private static <T> int positionOf(final T value, final Map<T, Integer> dictionary) {
+        Integer position = dictionary.get(value);
+        if (position == null) {
+            position = dictionary.size();
+            dictionary.put(value, position);
+        }
+        return position;
+    }
+
+    private static int readSize(final ByteBuffer buffer) {
+        return Math.toIntExact(readVarLong(buffer));
+    }
+
+    private static long readSignedVarLong(final ByteBuffer buffer) {
+        long zigZag = readVarLong(buffer);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+
+    private static long readVarLong(final ByteBuffer buffer) {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            byte next = buffer.get();
+            result |= (long) (next & 0x7F) << shift;
+            if (next >= 0) {
+                return result;
+            }
+        }
+        throw new IllegalArgumentException("Malformed number in the snapshot");
+    }
+
+    private static String readString(final ByteBuffer buffer) {
+        var bytes = new byte[readSize(buffer)];
+        buffer.get(bytes);
+        return new String(bytes, UTF_8);
+    }
+
+    private static class Output {
+        private byte[] bytes;
+        private int size;
+
+        Output(final int expectedSize) {
+            this.bytes = new byte[expectedSize];
+        }
+
+        void writeByte(final int value) {
+            ensureCapacity(1);
+            bytes[size++] = (byte) value;
+        }
+
+        void writeInt(final int value) {
+            for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                writeByte(value >>> shift);
+            }
+        }
+
+        void writeLong(final long value) {
+            for (int shift = Long.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+                writeByte((int) (value >>> shift));
+            }
+        }
+
+        void writeSignedVarLong(final long value) {
+            writeVarLong((value << 1) ^ (value >> (Long.SIZE - 1)));
+        }
+
+        void writeVarLong(long value) {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeString(final String value) {
+            byte[] encoded = value.getBytes(UTF_8);
+            writeVarLong(encoded.length);
+            writeBytes(encoded, encoded.length);
+        }
+
+        void writeBytes(final byte[] source, final int length) {
+            ensureCapacity(length);
+            System.arraycopy(source, 0, bytes, size, length);
+            size += length;
+        }
+
+        ByteBuffer toBuffer() {
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+
+        private void ensureCapacity(final int extra) {
+            if (size + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+            }
+        }
+    }
+}
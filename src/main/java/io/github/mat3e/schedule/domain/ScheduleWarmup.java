@@ -0,0 +1,144 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.Clock;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Loads the schedules of the given clinics before their first commands do, e.g. right after a deploy - meant for a
+ * repository which keeps what it loaded, like {@link CachingScheduleRepository}, with room for all the clinics.
+ * <p>
+ * At most {@code maxConcurrentLoads} clinics are loaded at a time, each on the given executor. A clinic which fails to
+ * load doesn't stop the others - its first command tries again. The warm-up is ready once every clinic was tried, see
+ * {@link #getProgress()}. At startup it's run by {@link ScheduleWarmupConfiguration}, when enabled.
+ * <p>
+ * Publishes {@code schedule.warmup} - timer per clinic and outcome (loaded, missing, failed) - and
+ * {@code schedule.warmup.remaining}, a gauge of the clinics not tried yet.
+ */
+class ScheduleWarmup {
+    private final ScheduleRepository repository;
+    private final Executor executor;
+    private final int maxConcurrentLoads;
+    private final MeterRegistry registry;
+    private final Clock clock;
+    private final Queue<UUID> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicInteger activeLoaders = new AtomicInteger();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger missing = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final CompletableFuture<WarmupProgress> finished = new CompletableFuture<>();
+    private volatile int total;
+
+    ScheduleWarmup(final ScheduleRepository repository, final Executor executor, final int maxConcurrentLoads, final MeterRegistry registry) {
+        if (maxConcurrentLoads < 1) {
+            throw new IllegalArgumentException("Number of concurrent loads should be positive, got " + maxConcurrentLoads);
+        }
+        this.repository = repository;
+        this.executor = executor;
+        this.maxConcurrentLoads = maxConcurrentLoads;
+        this.registry = registry;
+        this.clock = registry.config().clock();
+        Gauge.builder("schedule.warmup.remaining", this, warmup -> warmup.remaining())
+                .register(registry);
+    }
+
+    /**
+     * Starts loading the clinics, in the given order - e.g. the most active ones first.
+     *
+     * @param clinicIds clinics to load; the same clinic given twice is loaded once
+     * @return completed once every clinic was tried
+     * @throws IllegalStateException when the warm-up was started already
+     */
+    CompletableFuture<WarmupProgress> warmUp(final Collection<UUID> clinicIds) {
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("Warm-up was started already");
+        }
+        List<UUID> clinics = List.copyOf(new LinkedHashSet<>(clinicIds));
+        total = clinics.size();
+        pending.addAll(clinics);
+        int loaders = Math.min(maxConcurrentLoads, clinics.size());
+        if (loaders == 0) {
+            finished.complete(getProgress());
+        }
+        activeLoaders.set(loaders);
+        for (int i = 0; i < loaders; i++) {
+            try {
+                executor.execute(this::loadPending);
+            } catch (RejectedExecutionException e) {
+                // the other loaders take over the clinics
+                loaderFinished();
+            }
+        }
+        return finished.copy();
+    }
+
+    WarmupProgress getProgress() {
+        return new WarmupProgress(total, loaded.get(), missing.get(), failed.get());
+    }
+
+    /**
+     * @return true when every clinic was tried, false also before the warm-up starts
+     */
+    boolean isReady() {
+        return started.get() && getProgress().isReady();
+    }
+
+    private void loadPending() {
+        try {
+            UUID clinicId;
+            while ((clinicId = pending.poll()) != null) {
+                load(clinicId);
+            }
+        } finally {
+            loaderFinished();
+        }
+    }
+
+    private void load(final UUID clinicId) {
+        long start = clock.monotonicTime();
+        AtomicInteger outcome = failed;
+        try {
+            outcome = repository.findBy(clinicId).isPresent() ? loaded : missing;
+        } catch (RuntimeException e) {
+            // the clinic's first command loads it again
+        } finally {
+            timerOf(clinicId, outcome).record(clock.monotonicTime() - start, NANOSECONDS);
+            outcome.incrementAndGet();
+        }
+    }
+
+    private void loaderFinished() {
+        if (activeLoaders.decrementAndGet() == 0) {
+            // nobody left to load them, when the executor rejected all the loaders
+            while (pending.poll() != null) {
+                failed.incrementAndGet();
+            }
+            finished.complete(getProgress());
+        }
+    }
+
+    private int remaining() {
+        return total - loaded.get() - missing.get() - failed.get();
+    }
+
+    private Timer timerOf(final UUID clinicId, final AtomicInteger outcome) {
+        String outcomeTag = outcome == loaded ? "loaded" : outcome == missing ? "missing" : "failed";
+        return registry.timer("schedule.warmup", "clinic", clinicId.toString(), "outcome", outcomeTag);
+    }
+}
@@ -0,0 +1,67 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+/**
+ * Warms up the most recently changed clinics at startup, when {@code schedule.warmup.enabled} is set - loads them from
+ * the {@link EventLogScheduleRepository} into the {@link CachingScheduleRepository}, both from
+ * {@link ScheduleConfiguration}.
+ * <p>
+ * There is no readiness state to switch in this Spring Boot version, so the startup waits for the warm-up instead: the
+ * application is ready (and {@code ApplicationReadyEvent} published) once {@link ScheduleWarmup#isReady()}, or once
+ * {@code schedule.warmup.timeout} passes - the remaining clinics are then loaded in the background.
+ */
+@Configuration(proxyBeanMethods = false)
+@ConditionalOnProperty(name = "schedule.warmup.enabled", havingValue = "true")
+class ScheduleWarmupConfiguration {
+    @Bean
+    ScheduleWarmup scheduleWarmup(
+            final CachingScheduleRepository cache,
+            final ObjectProvider<MeterRegistry> registry,
+            @Value("${schedule.warmup.max-concurrent-loads:4}") final int maxConcurrentLoads
+    ) {
+        return new ScheduleWarmup(cache, loaders(maxConcurrentLoads), maxConcurrentLoads, ScheduleConfiguration.meterRegistry(registry));
+    }
+
+    @Bean
+    ApplicationRunner scheduleWarmupRunner(
+            final ScheduleWarmup warmup,
+            final EventLogScheduleRepository eventLog,
+            @Value("${schedule.warmup.clinics:1000}") final int clinics,
+            @Value("${schedule.warmup.timeout:1m}") final Duration timeout
+    ) {
+        return args -> {
+            try {
+                warmup.warmUp(eventLog.findMostRecentlyChanged(clinics)).get(timeout.toMillis(), MILLISECONDS);
+            } catch (TimeoutException e) {
+                // clinics not loaded yet are loaded by their first commands
+            }
+        };
+    }
+
+    // daemon threads, gone once idle - they are needed just at startup
+    private static ExecutorService loaders(final int maxConcurrentLoads) {
+        var pool = new ThreadPoolExecutor(maxConcurrentLoads, maxConcurrentLoads, 1, SECONDS, new LinkedBlockingQueue<>(), task -> {
+            var thread = new Thread(task, "schedule-warmup");
+            thread.setDaemon(true);
+            return thread;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+}
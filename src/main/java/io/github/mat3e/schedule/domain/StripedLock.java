@@ -0,0 +1,51 @@
+package io.github.mat3e.schedule.domain;
+
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Fixed number of reentrant locks, each guarding all the ids (or hashes) which fall into it. Taking all the stripes
+ * always happens in the same order, so it cannot deadlock with taking a single one.
+ */
+class StripedLock {
+    private final ReentrantLock[] stripes;
+
+    StripedLock(final int size) {
+        stripes = new ReentrantLock[size];
+        for (int i = 0; i < size; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    <T> T callLocked(final int id, final Supplier<T> action) {
+        ReentrantLock stripe = stripes[Math.floorMod(id, stripes.length)];
+        stripe.lock();
+        try {
+            return action.get();
+        } finally {
+            stripe.unlock();
+        }
+    }
+
+    void runLockedAll(final Runnable action) {
+        callLockedAll(() -> {
+            action.run();
+            return null;
+        });
+    }
+
+    <T> T callLockedAll(final Supplier<T> action) {
+        int locked = 0;
+        try {
+            for (ReentrantLock stripe : stripes) {
+                stripe.lock();
+                locked++;
+            }
+            return action.get();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[i].unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package io.github.mat3e.schedule.domain;
+
+import java.lang.ref.WeakReference;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps a single, canonical instance of each room, doctor and patient of a clinic - rooms and doctors (and zones of the
+ * dates) together with their dense ids, which {@link IntervalIndex} keeps instead of the values. Entries built from
+ * canonical values share them, so comparing values mostly ends at the reference check.
+ * <p>
+ * Values get in just when interned, which the schedule does for the entries it stores - looking up an id doesn't add
+ * anything. Rooms, doctors and zones are few, so they're never forgotten. Patients come and go with the visits, so
+ * they're held weakly - forgotten once no entry (of any copy of the schedule) refers to them. Safe for concurrent use;
+ * looking up an already known value or id takes no locks.
+ */
+class ValueRegistry {
+    static final int NO_ID = -1;
+
+    private final Dictionary<Room> rooms = new Dictionary<>();
+    private final Dictionary<Doctor> doctors = new Dictionary<>();
+    private final Dictionary<ZoneId> zones = new Dictionary<>();
+    // canonical instances by themselves; guarded by itself
+    private final Map<Patient, WeakReference<Patient>> patients = new WeakHashMap<>();
+
+    Room intern(final Room room) {
+        return rooms.intern(room);
+    }
+
+    /**
+     * @return the same entry if all its values are already canonical, a copy with canonical values otherwise
+     */
+    ScheduleEntry intern(final ScheduleEntry entry) {
+        Doctor doctor = doctors.intern(entry.getDoctor());
+        Room room = rooms.intern(entry.getRoom());
+        Patient patient = entry.getPatient() == null ? null : intern(entry.getPatient());
+        if (doctor == entry.getDoctor() && room == entry.getRoom() && patient == entry.getPatient()) {
+            return entry;
+        }
+        return entry.copy(doctor, entry.getFrom(), entry.getTo(), room, patient);
+    }
+
+    /**
+     * @return the same rota if all its values are already canonical, a copy with canonical values otherwise
+     */
+    RecurringOnCall intern(final RecurringOnCall onCall) {
+        Doctor doctor = doctors.intern(onCall.getDoctor());
+        Room room = rooms.intern(onCall.getRoom());
+        if (doctor == onCall.getDoctor() && room == onCall.getRoom()) {
+            return onCall;
+        }
+        return onCall.copy(doctor, onCall.getFrom(), onCall.getTo(), room, onCall.getEvery(), onCall.getUntil(), onCall.getSkipped());
+    }
+
+    /**
+     * @return {@link #NO_ID} when the room was never interned
+     */
+    int idOf(final Room room) {
+        return rooms.idOf(room);
+    }
+
+    /**
+     * @return {@link #NO_ID} when the doctor was never interned
+     */
+    int idOf(final Doctor doctor) {
+        return doctors.idOf(doctor);
+    }
+
+    /**
+     * @return {@link #NO_ID} when no date with the zone was interned
+     */
+    int idOf(final ZoneId zone) {
+        return zones.idOf(zone);
+    }
+
+    int internedIdOf(final Room room) {
+        return rooms.slotOf(room).id;
+    }
+
+    int internedIdOf(final Doctor doctor) {
+        return doctors.slotOf(doctor).id;
+    }
+
+    int internedIdOf(final ZoneId zone) {
+        return zones.slotOf(zone).id;
+    }
+
+    Room room(final int id) {
+        return rooms.valueOf(id);
+    }
+
+    Doctor doctor(final int id) {
+        return doctors.valueOf(id);
+    }
+
+    ZoneId zone(final int id) {
+        return zones.valueOf(id);
+    }
+
+    private Patient intern(final Patient patient) {
+        synchronized (patients) {
+            WeakReference<Patient> known = patients.get(patient);
+            Patient canonical = known == null ? null : known.get();
+            if (canonical != null) {
+                return canonical;
+            }
+            patients.put(patient, new WeakReference<>(patient));
+            return patient;
+        }
+    }
+
+    private static class Dictionary<T> {
+        private final Map<T, Slot<T>> slots = new ConcurrentHashMap<>();
+        // replaced (never changed) when a value gets in, so reading takes no lock
+        private volatile List<T> values = List.of();
+
+        T intern(final T value) {
+            return slotOf(value).value;
+        }
+
+        int idOf(final T value) {
+            Slot<T> slot = slots.get(value);
+            return slot == null ? NO_ID : slot.id;
+        }
+
+        T valueOf(final int id) {
+            return values.get(id);
+        }
+
+        Slot<T> slotOf(final T value) {
+            Slot<T> slot = slots.get(value);
+            if (slot != null) {
+                return slot;
+            }
+            synchronized (this) {
+                return slots.computeIfAbsent(value, newValue -> {
+                    List<T> withNew = new ArrayList<>(values);
+                    withNew.add(newValue);
+                    values = List.copyOf(withNew);
+                    return new Slot<>(newValue, withNew.size() - 1);
+                });
+            }
+        }
+    }
+
+    private static class Slot<T> {
+        final T value;
+        final int id;
+
+        Slot(final T value, final int id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+}
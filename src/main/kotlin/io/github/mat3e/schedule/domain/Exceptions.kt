@@ -1,7 +1,11 @@
 package io.github.mat3e.schedule.domain
 
+import java.util.UUID
+
 sealed class ScheduleException(message: String) : RuntimeException(message)
 
+class ScheduleVersionConflictException(clinicId: UUID, expectedVersion: Long) : ScheduleException("Schedule for clinic $clinicId changed since version $expectedVersion")
+
 internal sealed class BusinessScheduleException(description: String) : ScheduleException(description)
 
 internal class DateAlreadyTakenException : BusinessScheduleException("Cannot schedule for a given date. All the rooms taken")
@@ -19,3 +23,5 @@ internal class RoomMismatchException(onCallRoom: Room) : BusinessScheduleExcepti
 internal class VisitAlreadyScheduledException(existingPatient: Patient) : BusinessScheduleException("There are already interfering visits, e.g. for patient ${existingPatient.name}")
 
 internal class NothingToEraseException : BusinessScheduleException("There are no entries to erase")
+
+internal class BatchRejectedException(val rejections: Map<ScheduleEntry, BusinessScheduleException>) : BusinessScheduleException("Cannot schedule ${rejections.size} of the entries, nothing scheduled")
@@ -0,0 +1,57 @@
+package io.github.mat3e.schedule.domain
+
+/**
+ * Result of the schedule commands which report rejections instead of throwing them.
+ *
+ * Rejections without any details are singletons. The others just wrap the conflicting entry - no message, no stack trace.
+ */
+sealed class ScheduleOutcome {
+    val isAccepted: Boolean
+        get() = this === Accepted
+
+    object Accepted : ScheduleOutcome()
+
+    sealed class Rejection : ScheduleOutcome() {
+        internal abstract fun toException(): BusinessScheduleException
+
+        data class DateAlreadyTaken(val conflictingEntry: ScheduleEntry) : Rejection() {
+            override fun toException() = DateAlreadyTakenException()
+        }
+
+        data class RoomAlreadyTaken(val conflictingEntry: ScheduleEntry) : Rejection() {
+            override fun toException() = RoomAlreadyTakenException(conflictingEntry.room)
+        }
+
+        object OnCallWithPatient : Rejection() {
+            override fun toException() = OnCallWithPatientException()
+        }
+
+        object NoPatient : Rejection() {
+            override fun toException() = NoPatientException()
+        }
+
+        object NoDoctorOnCall : Rejection() {
+            override fun toException() = NoDoctorOnCallException("No corresponding on call for this doctor")
+        }
+
+        object OnCallsNotAligned : Rejection() {
+            override fun toException() = NoDoctorOnCallException("Doctor's on calls are not fully aligned with the visit")
+        }
+
+        data class RoomMismatch(val conflictingEntry: ScheduleEntry) : Rejection() {
+            override fun toException() = RoomMismatchException(conflictingEntry.room)
+        }
+
+        data class VisitAlreadyScheduled(val conflictingEntry: ScheduleEntry) : Rejection() {
+            override fun toException() = VisitAlreadyScheduledException(conflictingEntry.patient!!)
+        }
+
+        object NothingToErase : Rejection() {
+            override fun toException() = NothingToEraseException()
+        }
+
+        data class BatchRejected(val rejections: Map<ScheduleEntry, Rejection>) : Rejection() {
+            override fun toException() = BatchRejectedException(rejections.mapValues { it.value.toException() })
+        }
+    }
+}
@@ -1,12 +1,9 @@
 package io.github.mat3e.schedule.domain
 
-import java.time.Instant
-import java.time.ZoneOffset
+import java.time.Period
 import java.time.ZonedDateTime
-import java.util.Optional
+import java.util.Set.of as immutableSetOf
 import java.util.UUID
-import java.util.stream.Collectors.toSet
-import java.util.stream.Stream
 
 enum class Specialization {
     SURGEON
@@ -26,16 +23,18 @@ data class ScheduleEntry @JvmOverloads constructor(
         val patient: Patient? = null
 ) {
     companion object {
+        private val dummyDoctor = Doctor(Specialization.SURGEON)
+        private val dummyRoom = Room("dummy")
+
         @JvmStatic
         fun dummy(from: ZonedDateTime, to: ZonedDateTime) =
-                ScheduleEntry(Doctor(Specialization.SURGEON), from, to, Room("dummy"))
+                ScheduleEntry(dummyDoctor, from, to, dummyRoom)
     }
 
-    internal val range: ClosedRange<ZonedDateTime> = from..to
     val isVisit: Boolean = patient != null
 
     init {
-        if (range.isEmpty()) {
+        if (from > to) {
             throw IllegalArgumentException("Start ($from) should be before end ($to)")
         }
     }
@@ -61,27 +60,30 @@ data class ScheduleEntry @JvmOverloads constructor(
         if (this cannotBeImmersedInto entries) {
             return entries
         }
-        val totalRange: ClosedRange<ZonedDateTime> = entries.squashToRange()
-        if (this notFullyIncludedIn totalRange) {
+        val onCalls = entries.sortedByStart()
+        if (!onCalls.followEachOther()) {
+            return entries
+        }
+        val start = onCalls.first().from
+        val end = onCalls.last().to
+        if (from < start || from > end || to < start || to > end) {
             return entries
         }
-        return totalRange unsquashUsing this
+        return splitOnCalls(start, end)
     }
 
-    internal fun convertToOnCallWithDates(start: ZonedDateTime, end: ZonedDateTime): Optional<ScheduleEntry> =
-            Optional.of(start)
-                    .filter { start < end }
-                    .map { copy(from = start, to = end, patient = null) }
+    internal fun convertToOnCallWithDates(start: ZonedDateTime, end: ZonedDateTime): ScheduleEntry? =
+            if (start < end) copy(from = start, to = end, patient = null) else null
 
-    internal fun trimTo(other: ScheduleEntry): Optional<ScheduleEntry> = Optional.ofNullable(when {
-        other.range.start < range.start && other.range.endInclusive > range.endInclusive -> null
-        to within other.range -> copy(to = other.from)
-        from within other.range -> copy(from = other.to)
+    internal fun trimTo(other: ScheduleEntry): ScheduleEntry? = when {
+        other.from < from && other.to > to -> null
+        to.within(other.from, other.to) -> copy(to = other.from)
+        from.within(other.from, other.to) -> copy(from = other.to)
         else -> this
-    })
+    }
 
     internal infix fun datesInterfereWith(other: ScheduleEntry): Boolean =
-            other.from within this.range || this.from within other.range
+            other.from.within(from, to) || from.within(other.from, other.to)
 
     private infix fun cannotBeImmersedInto(entries: Set<ScheduleEntry>): Boolean =
             !this.isVisit || this notRelatedWith entries || entries.any { it.isVisit }
@@ -89,42 +91,212 @@ data class ScheduleEntry @JvmOverloads constructor(
     private infix fun notRelatedWith(entries: Set<ScheduleEntry>): Boolean =
             entries.any { !it.interferesWith(this) || it.doctor != this.doctor }
 
-    private infix fun notFullyIncludedIn(totalRange: ClosedRange<ZonedDateTime>): Boolean =
-            totalRange.isEmpty() || this.from !in totalRange || this.to !in totalRange
+    // divides start-end into 2 on calls and this visit between them (edge case - just 1 on call either before or after the visit)
+    private fun splitOnCalls(start: ZonedDateTime, end: ZonedDateTime): Set<ScheduleEntry> {
+        val before = convertToOnCallWithDates(start, from)
+        val after = convertToOnCallWithDates(to, end)
+        return when {
+            before == null && after == null -> immutableSetOf(this)
+            before == null -> immutableSetOf(this, after)
+            after == null -> immutableSetOf(this, before)
+            else -> immutableSetOf(this, before, after)
+        }
+    }
+}
+
+/**
+ * On call repeated every given number of days (or weeks), e.g. every Monday 8:00-14:00 for a year. Occurrences follow
+ * the local time of [from], so the rota stays at 8:00 when the clocks change. The first occurrence is [from]-[to],
+ * the last one starts before [until].
+ *
+ * Occurrences are not kept anywhere, they are computed when needed. The [skipped] ones (by their starts) are not part
+ * of the rota anymore - they were erased, or replaced with entries when a visit split them or an erase trimmed them.
+ */
+data class RecurringOnCall @JvmOverloads constructor(
+        val doctor: Doctor,
+        val from: ZonedDateTime,
+        val to: ZonedDateTime,
+        val room: Room,
+        val every: Period,
+        val until: ZonedDateTime,
+        val skipped: Set<ZonedDateTime> = emptySet()
+) {
+    init {
+        if (from >= to) {
+            throw IllegalArgumentException("Start ($from) should be before end ($to)")
+        }
+        if (every.toTotalMonths() != 0L || every.days <= 0) {
+            throw IllegalArgumentException("Should repeat every positive number of days, got $every")
+        }
+        if (to > from.plus(every)) {
+            throw IllegalArgumentException("Occurrences should not overlap, got $from-$to every $every")
+        }
+        if (until <= from) {
+            throw IllegalArgumentException("Start ($from) should be before the end of the rota ($until)")
+        }
+    }
+
+    private val days: Long = every.days.toLong()
+    internal val occurrenceCount: Int = firstNumber(from, until, true, Int.MAX_VALUE)
+    internal val hasOccurrences: Boolean
+        get() = skipped.size < occurrenceCount
+
+    /**
+     * Occurrences (but the skipped ones) interfering with the dates of the given entry - room doesn't matter. They are
+     * computed as the iterator goes, in the order of their start dates.
+     */
+    internal fun occurrencesInterferingWith(entry: ScheduleEntry): Iterator<ScheduleEntry> = iterator {
+        var number = firstEndingAfter(entry.from)
+        while (number < occurrenceCount) {
+            val occurrence = occurrence(number++)
+            if (!occurrence.datesInterfereWith(entry)) {
+                break
+            }
+            if (occurrence.from !in skipped) {
+                yield(occurrence)
+            }
+        }
+    }
+
+    internal fun occurrences(): Iterator<ScheduleEntry> =
+            occurrencesInterferingWith(ScheduleEntry.dummy(from, until))
+
+    /**
+     * @return whether the entry is one of the occurrences which are not skipped
+     */
+    internal fun occursAs(entry: ScheduleEntry): Boolean {
+        if (entry.isVisit || entry.doctor != doctor || entry.room != room || entry.from in skipped) {
+            return false
+        }
+        val number = firstEndingAfter(entry.from)
+        return number < occurrenceCount && occurrence(number) == entry
+    }
+
+    /**
+     * @return the rota without the given occurrence; null when no occurrences are left
+     */
+    internal fun skipping(occurrence: ScheduleEntry): RecurringOnCall? =
+            copy(skipped = skipped + occurrence.from).takeIf { it.hasOccurrences }
+
+    internal fun occurrencesEndedBy(date: ZonedDateTime): List<ScheduleEntry> {
+        val result = mutableListOf<ScheduleEntry>()
+        val firstNotEnded = firstEndingAfter(date)
+        for (number in 0 until firstNotEnded) {
+            val occurrence = occurrence(number)
+            if (occurrence.from !in skipped) {
+                result.add(occurrence)
+            }
+        }
+        return result
+    }
+
+    /**
+     * @return the rota starting with the first occurrence which didn't end by the given date; null when no
+     * occurrences are left
+     */
+    internal fun withoutEndedBy(date: ZonedDateTime): RecurringOnCall? {
+        val firstNotEnded = firstEndingAfter(date)
+        if (firstNotEnded == 0) {
+            return this
+        }
+        if (firstNotEnded >= occurrenceCount) {
+            return null
+        }
+        val first = occurrence(firstNotEnded)
+        return copy(from = first.from, to = first.to, skipped = skipped.filterTo(HashSet()) { it >= first.from })
+                .takeIf { it.hasOccurrences }
+    }
+
+    private fun occurrence(number: Int): ScheduleEntry =
+            ScheduleEntry(doctor, from.plusDays(days * number), to.plusDays(days * number), room)
+
+    private fun firstEndingAfter(date: ZonedDateTime): Int = firstNumber(to, date, false, occurrenceCount)
+
+    // the first occurrence number with the edge (start or end) after the date (or at it); the estimate based on days
+    // is off by an hour or so when the clocks change in between, so it takes a step to correct at most
+    private fun firstNumber(edge: ZonedDateTime, date: ZonedDateTime, orAt: Boolean, limit: Int): Int {
+        val estimate = Math.floorDiv(date.toEpochSecond() - edge.toEpochSecond(), days * SECONDS_PER_DAY)
+        var number = estimate.coerceIn(0L, limit.toLong()).toInt()
+        while (number > 0 && edge.plusDays(days * (number - 1)).comesAfter(date, orAt)) {
+            number--
+        }
+        while (number < limit && !edge.plusDays(days * number).comesAfter(date, orAt)) {
+            number++
+        }
+        return number
+    }
+}
+
+data class ScheduleSnapshot @JvmOverloads constructor(
+        val clinicId: UUID,
+        val entries: Set<ScheduleEntry>,
+        val recurringOnCalls: Set<RecurringOnCall> = emptySet()
+)
+
+data class FreeSlot(val room: Room, val from: ZonedDateTime, val to: ZonedDateTime)
+
+data class TimeWindow(val from: ZonedDateTime, val to: ZonedDateTime) {
+    init {
+        if (from > to) {
+            throw IllegalArgumentException("Start ($from) should be before end ($to)")
+        }
+    }
+}
+
+data class VersionedSchedule(val schedule: Schedule, val version: Long)
+
+internal data class ScheduleChange(val entry: ScheduleEntry, val isAdded: Boolean)
+
+internal data class PendingChanges(val changes: List<ScheduleChange>, val result: ScheduleSnapshot)
+
+/**
+ * Clinics loaded ahead of the first commands so far: missing ones have no schedule stored, failed ones will be loaded
+ * by their first command.
+ */
+internal data class WarmupProgress(val total: Int, val loaded: Int, val missing: Int, val failed: Int) {
+    val isReady: Boolean
+        get() = loaded + missing + failed == total
 }
 
-data class ScheduleSnapshot(val clinicId: UUID, val entries: Set<ScheduleEntry>)
-
-// merges all entries into one from-to block (if no empty slots in between)
-private fun Set<ScheduleEntry>.squashToRange(): ClosedRange<ZonedDateTime> =
-        this.sortedBy { it.from }
-                .map { it.range }
-                .reduce { totalRange, currentRange ->
-                    when {
-                        totalRange.isEmpty() -> totalRange
-                        totalRange canBeMergedWith currentRange -> totalRange.start..currentRange.endInclusive
-                        else -> emptyRange()
-                    }
-                }
-
-// divides range into 2 on calls and 1 visit between them (edge case - just 1 on call either before or after the visit)
-private infix fun ClosedRange<ZonedDateTime>.unsquashUsing(entry: ScheduleEntry) =
-        Stream.concat(
-                Stream.of(entry),
-                Stream.concat(
-                        entry.convertToOnCallWithDates(this.start, entry.from).stream(),
-                        entry.convertToOnCallWithDates(entry.to, this.endInclusive).stream()
-                )
-        ).collect(toSet())
-
-// uses exclusive end in range
-private infix fun ZonedDateTime.within(range: ClosedRange<ZonedDateTime>): Boolean =
-        this in range && this < range.endInclusive
-
-// checks if range right after another range
-private infix fun ClosedRange<ZonedDateTime>.canBeMergedWith(other: ClosedRange<ZonedDateTime>): Boolean =
-        this.endInclusive == other.start
-
-// big dates in the reversed order = empty range
-private fun emptyRange(): ClosedRange<ZonedDateTime> =
-        ZonedDateTime.ofInstant(Instant.ofEpochMilli(Long.MAX_VALUE), ZoneOffset.UTC)..ZonedDateTime.ofInstant(Instant.ofEpochMilli(Long.MIN_VALUE), ZoneOffset.UTC)
+// stable like sortedBy, so entries starting at the same time keep the set's order; there are just a few of them usually
+private fun Set<ScheduleEntry>.sortedByStart(): Array<ScheduleEntry> {
+    if (isEmpty()) {
+        throw IllegalArgumentException("No entries to immerse into")
+    }
+    val result = toTypedArray()
+    if (result.size > INSERTION_SORT_LIMIT) {
+        result.sortBy { it.from }
+        return result
+    }
+    for (i in 1 until result.size) {
+        val current = result[i]
+        var j = i - 1
+        while (j >= 0 && result[j].from > current.from) {
+            result[j + 1] = result[j]
+            j--
+        }
+        result[j + 1] = current
+    }
+    return result
+}
+
+private const val INSERTION_SORT_LIMIT = 8
+
+// checks if there are no empty slots in between sorted entries
+private fun Array<ScheduleEntry>.followEachOther(): Boolean {
+    for (i in 1 until size) {
+        if (this[i - 1].to != this[i].from) {
+            return false
+        }
+    }
+    return true
+}
+
+private const val SECONDS_PER_DAY = 24 * 60 * 60L
+
+private fun ZonedDateTime.comesAfter(date: ZonedDateTime, orAt: Boolean): Boolean =
+        if (orAt) this >= date else this > date
+
+// uses exclusive end
+private fun ZonedDateTime.within(start: ZonedDateTime, end: ZonedDateTime): Boolean =
+        this >= start && this < end
@@ -0,0 +1,33 @@
+package io.github.mat3e.schedule.domain
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+class CachingRoomRepositorySpec extends Specification {
+    private MeterRegistry registry = new SimpleMeterRegistry()
+    private RoomRepository delegate = Mock()
+
+    def 'should load rooms once until they change'() {
+        given:
+        def toTest = new CachingRoomRepository(delegate, registry)
+
+        when:
+        toTest.findAll()
+        def beforeChange = toTest.findAll()
+
+        then:
+        1 * delegate.findAll() >> [new Room('1')]
+        beforeChange == [new Room('1')]
+
+        when:
+        toTest.roomsChanged()
+        def afterChange = toTest.findAll()
+
+        then:
+        1 * delegate.findAll() >> [new Room('1'), new Room('2')]
+        afterChange == [new Room('1'), new Room('2')]
+        registry.get('cache.gets').tag('cache', 'rooms').tag('result', 'hit').counter().count() == 1
+        registry.get('cache.gets').tag('cache', 'rooms').tag('result', 'miss').counter().count() == 2
+    }
+}
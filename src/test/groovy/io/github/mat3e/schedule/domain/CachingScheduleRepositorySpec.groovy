@@ -0,0 +1,160 @@
+package io.github.mat3e.schedule.domain
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.ZonedDateTime
+
+import static java.time.temporal.ChronoUnit.HOURS
+
+class CachingScheduleRepositorySpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.now()
+    private static final ZonedDateTime end = start + Duration.of(2, HOURS)
+
+    private MeterRegistry registry = new SimpleMeterRegistry()
+    private ScheduleRepository delegate = Mock()
+
+    def 'should load each schedule just once'() {
+        given:
+        def toTest = new CachingScheduleRepository(delegate, 10, registry)
+        def schedule = exampleSchedule()
+
+        when:
+        toTest.findBy(schedule.clinicId).get().schedule.scheduleOnCall(exampleOnCall())
+        def result = toTest.findBy(schedule.clinicId).get()
+
+        then:
+        1 * delegate.findBy(schedule.clinicId) >> Optional.of(new VersionedSchedule(schedule, 1))
+        result.version == 1
+        result.schedule.snapshot.entries.isEmpty()
+        registry.get('cache.gets').tag('cache', 'schedules').tag('result', 'hit').counter().count() == 1
+        registry.get('cache.gets').tag('cache', 'schedules').tag('result', 'miss').counter().count() == 1
+    }
+
+    def 'should evict the least recently used schedule'() {
+        given:
+        def toTest = new CachingScheduleRepository(delegate, 2, registry)
+        def (first, second, third) = [exampleSchedule(), exampleSchedule(), exampleSchedule()]
+        delegate.save(_ as Schedule, ScheduleRepository.NO_VERSION) >> 1
+        toTest.save(first, ScheduleRepository.NO_VERSION)
+        toTest.save(second, ScheduleRepository.NO_VERSION)
+        toTest.findBy(first.clinicId)
+
+        when:
+        toTest.save(third, ScheduleRepository.NO_VERSION)
+        toTest.findBy(first.clinicId)
+        toTest.findBy(second.clinicId)
+
+        then:
+        1 * delegate.findBy(second.clinicId) >> Optional.of(new VersionedSchedule(second, 1))
+        0 * delegate.findBy(_)
+        toTest.size() == 2
+        registry.get('cache.evictions').tag('cache', 'schedules').counter().count() == 2
+    }
+
+    def 'should drop the cached schedule when the underlying repository rejects the save'() {
+        given:
+        def toTest = new CachingScheduleRepository(delegate, 10, registry)
+        def schedule = exampleSchedule()
+        delegate.save(schedule, ScheduleRepository.NO_VERSION) >> 1
+        toTest.save(schedule, ScheduleRepository.NO_VERSION)
+
+        when:
+        toTest.save(schedule, 1)
+
+        then:
+        1 * delegate.save(schedule, 1) >> { throw new ScheduleVersionConflictException(schedule.clinicId, 1) }
+        thrown ScheduleVersionConflictException
+
+        when:
+        toTest.findBy(schedule.clinicId)
+
+        then:
+        1 * delegate.findBy(schedule.clinicId) >> Optional.empty()
+    }
+
+    def 'should pass saves on once enough of them were collected'() {
+        given:
+        def toTest = new CachingScheduleRepository(delegate, 10, 2, registry)
+        def schedule = exampleSchedule()
+        delegate.save(schedule, ScheduleRepository.NO_VERSION) >> 1
+        toTest.save(schedule, ScheduleRepository.NO_VERSION)
+
+        when:
+        def loaded = toTest.findBy(schedule.clinicId).get()
+        loaded.schedule.scheduleOnCall(exampleOnCall())
+        def firstVersion = toTest.save(loaded.schedule, loaded.version)
+
+        then:
+        0 * delegate.save(*_)
+        firstVersion == 2
+
+        when:
+        def reloaded = toTest.findBy(schedule.clinicId).get()
+        reloaded.schedule.scheduleOnCall(exampleOnCall(end, end + Duration.of(1, HOURS)))
+        def secondVersion = toTest.save(reloaded.schedule, reloaded.version)
+
+        then:
+        1 * delegate.save({ it.pendingChanges.changes*.entry == [exampleOnCall()] }, 1) >> 2
+        then:
+        1 * delegate.save({ it.pendingChanges.changes*.entry == [exampleOnCall(end, end + Duration.of(1, HOURS))] }, 2) >> 3
+        secondVersion == 3
+    }
+
+    def 'should evict the least recently used schedule without saves to pass on'() {
+        given:
+        def toTest = new CachingScheduleRepository(delegate, 2, 10, registry)
+        def (pending, first, second) = [exampleSchedule(), exampleSchedule(), exampleSchedule()]
+        delegate.save(_ as Schedule, ScheduleRepository.NO_VERSION) >> 1
+        toTest.save(pending, ScheduleRepository.NO_VERSION)
+        toTest.save(pending, 1)
+        toTest.save(first, ScheduleRepository.NO_VERSION)
+
+        when:
+        toTest.save(second, ScheduleRepository.NO_VERSION)
+        toTest.findBy(pending.clinicId)
+        toTest.findBy(first.clinicId)
+
+        then:
+        1 * delegate.findBy(first.clinicId) >> Optional.of(new VersionedSchedule(first, 1))
+        0 * delegate.findBy(_)
+        toTest.size() == 2
+        registry.get('cache.evictions').tag('cache', 'schedules').counter().count() == 2
+    }
+
+    def 'should fail the next save of the clinic which lost its saves, not the save which passed them on'() {
+        given:
+        def toTest = new CachingScheduleRepository(delegate, 10, 2, registry)
+        def (lost, other) = [exampleSchedule(), exampleSchedule()]
+        delegate.save(_ as Schedule, ScheduleRepository.NO_VERSION) >> 1
+        toTest.save(lost, ScheduleRepository.NO_VERSION)
+        toTest.save(other, ScheduleRepository.NO_VERSION)
+        def lostVersion = toTest.save(lost, 1)
+
+        when:
+        def otherVersion = toTest.save(other, 1)
+
+        then:
+        1 * delegate.save({ it.clinicId == lost.clinicId }, 1) >> { throw new ScheduleVersionConflictException(lost.clinicId, 1) }
+        1 * delegate.save({ it.clinicId == other.clinicId }, 1) >> 2
+        otherVersion == 2
+
+        when:
+        toTest.save(lost, lostVersion)
+
+        then:
+        0 * delegate.save(*_)
+        def e = thrown(ScheduleVersionConflictException)
+        e.cause instanceof ScheduleVersionConflictException
+    }
+
+    private static Schedule exampleSchedule() {
+        new Schedule(UUID.randomUUID(), [new Room('1')])
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from = start, ZonedDateTime to = end) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room('1'))
+    }
+}
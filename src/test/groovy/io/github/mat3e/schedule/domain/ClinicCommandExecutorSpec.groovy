@@ -0,0 +1,195 @@
+package io.github.mat3e.schedule.domain
+
+import spock.lang.Specification
+
+import java.time.Duration
+import java.time.ZonedDateTime
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+
+import static java.time.temporal.ChronoUnit.HOURS
+
+class ClinicCommandExecutorSpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.now()
+    private static final ZonedDateTime end = start + Duration.of(2, HOURS)
+
+    private InMemoryScheduleRepository repository = new InMemoryScheduleRepository()
+    private List<Runnable> tasks = []
+    private Executor manualExecutor = { tasks << it } as Executor
+
+    def 'should run commands of a clinic one after another and save them together'() {
+        given:
+        def clinicId = exampleClinic()
+        def toTest = new ClinicCommandExecutor(repository, manualExecutor)
+
+        when:
+        def first = toTest.scheduleOnCall(clinicId, exampleOnCall())
+        def second = toTest.scheduleOnCall(clinicId, exampleOnCall(start + Duration.of(1, HOURS), end))
+        def third = toTest.erase(clinicId, end, end + Duration.of(1, HOURS))
+        runTasks()
+
+        then:
+        first.join().is(ScheduleOutcome.Accepted.INSTANCE)
+        second.join() == new ScheduleOutcome.Rejection.DateAlreadyTaken(exampleOnCall())
+        third.join().is(ScheduleOutcome.Rejection.NothingToErase.INSTANCE)
+        with(repository.findBy(clinicId).get()) {
+            version == 2
+            schedule.snapshot.entries == [exampleOnCall()] as Set
+        }
+    }
+
+    def 'should reject commands which don\'t fit the clinic\'s mailbox'() {
+        given:
+        def clinicId = exampleClinic()
+        def toTest = new ClinicCommandExecutor(repository, manualExecutor, 1)
+
+        when:
+        def accepted = toTest.scheduleOnCall(clinicId, exampleOnCall())
+        def rejected = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end + Duration.of(1, HOURS)))
+        def otherClinic = toTest.scheduleOnCall(exampleClinic(), exampleOnCall())
+        runTasks()
+        rejected.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof RejectedExecutionException
+        accepted.join().accepted
+        otherClinic.join().accepted
+    }
+
+    def 'should fail commands of an unknown clinic'() {
+        given:
+        def toTest = new ClinicCommandExecutor(repository, manualExecutor)
+
+        when:
+        def result = toTest.scheduleOnCall(UUID.randomUUID(), exampleOnCall())
+        runTasks()
+        result.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof IllegalArgumentException
+    }
+
+    def 'should fail all the commands saved together and load the schedule again when saving fails'() {
+        given:
+        def clinicId = exampleClinic()
+        def stored = repository.findBy(clinicId).get()
+        stored.schedule.scheduleOnCall(exampleOnCall())
+        repository.save(stored.schedule, stored.version)
+        and:
+        def failed = false
+        def failingOnce = [
+                findBy: { UUID id -> repository.findBy(id) },
+                save  : { Schedule schedule, long expectedVersion ->
+                    if (!failed) {
+                        failed = true
+                        throw new ScheduleVersionConflictException(schedule.clinicId, expectedVersion)
+                    }
+                    repository.save(schedule, expectedVersion)
+                }
+        ] as ScheduleRepository
+        def toTest = new ClinicCommandExecutor(failingOnce, manualExecutor)
+
+        when:
+        def conflicting = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end + Duration.of(1, HOURS)))
+        def alsoFailed = toTest.scheduleOnCall(clinicId, exampleOnCall())
+        runTasks()
+        def retried = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end + Duration.of(1, HOURS)))
+        runTasks()
+        conflicting.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof ScheduleVersionConflictException
+        alsoFailed.completedExceptionally
+        retried.join().accepted
+        repository.findBy(clinicId).get().schedule.snapshot.entries.size() == 2
+    }
+
+    def 'should drop the mailboxes of clinics with no commands left'() {
+        given:
+        def clinicId = exampleClinic()
+        def toTest = new ClinicCommandExecutor(repository, manualExecutor)
+
+        when:
+        def first = toTest.scheduleOnCall(clinicId, exampleOnCall())
+        toTest.scheduleOnCall(exampleClinic(), exampleOnCall())
+
+        then:
+        toTest.mailboxCount() == 2
+
+        when:
+        runTasks()
+        def second = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end + Duration.of(1, HOURS)))
+        runTasks()
+
+        then:
+        toTest.mailboxCount() == 0
+        first.join().accepted
+        second.join().accepted
+        repository.findBy(clinicId).get().version == 3
+    }
+
+    def clinicId = exampleClinic()
+        def toTest = new ClinicCommandExecutor(repository, manualExecutor)
+        toTest.scheduleOnCall(clinicId, exampleOnCall())
+        runTasks()
+        and:
+        def changedElsewhere = repository.findBy(clinicId).get()
+        changedElsewhere.schedule.scheduleOnCall(exampleOnCall(end, end + Duration.of(1, HOURS)))
+        repository.save(changedElsewhere.schedule, changedElsewhere.version)
+
+        when:
+        def conflicting = toTest.scheduleOnCall(clinicId, exampleOnCall(end + Duration.of(1, HOURS), end + Duration.of(2, HOURS)))
+        runTasks()
+        def retried = toTest.scheduleOnCall(clinicId, exampleOnCall(end + Duration.of(1, HOURS), end + Duration.of(2, HOURS)))
+        runTasks()
+        conflicting.get()
+
+        then:
+        def e = thrown(ExecutionException)
+        e.cause instanceof ScheduleVersionConflictException
+        retried.join().accepted
+        repository.findBy(clinicId).get().schedule.snapshot.entries.size() == 3
+    }
+
+    def 'should run commands of many clinics in parallel'() {
+        given:
+        def pool = Executors.newFixedThreadPool(4)
+        def toTest = new ClinicCommandExecutor(repository, pool)
+        def clinics = [exampleClinic(), exampleClinic(), exampleClinic()]
+
+        when:
+        def results = (0..<100).collectMany { i ->
+            clinics.collect { clinicId ->
+                toTest.scheduleOnCall(clinicId, exampleOnCall(start + Duration.of(i, HOURS), start + Duration.of(i + 1, HOURS)))
+            }
+        }
+        CompletableFuture.allOf(results as CompletableFuture[]).join()
+        pool.shutdown()
+
+        then:
+        results.every { it.join().accepted }
+        clinics.every { repository.findBy(it).get().schedule.snapshot.entries.size() == 100 }
+    }
+
+    private UUID exampleClinic() {
+        def schedule = new Schedule(UUID.randomUUID(), [new Room('1')])
+        repository.save(schedule, ScheduleRepository.NO_VERSION)
+        schedule.clinicId
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run()
+        }
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from = start, ZonedDateTime to = end) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room('1'))
+    }
+}
@@ -0,0 +1,216 @@
+package io.github.mat3e.schedule.domain
+
+import spock.lang.Specification
+
+import java.nio.channels.FileChannel
+import java.nio.file.Files
+import java.nio.file.Path
+import java.nio.file.StandardOpenOption
+import java.nio.file.attribute.FileTime
+import java.time.Instant
+import java.time.Period
+import java.time.ZonedDateTime
+
+class EventLogScheduleRepositorySpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.now()
+    private static final ZonedDateTime end = start.plusHours(2)
+
+    private ScheduleFactory scheduleFactory = new ScheduleFactory({ [new Room('1'), new Room('2')] } as RoomRepository)
+    private Path directory = Files.createTempDirectory('schedule')
+
+    def cleanup() {
+        directory.toFile().deleteDir()
+    }
+
+    def 'should replay saved changes'() {
+        given:
+        def schedule = scheduleFactory.create()
+        schedule.scheduleOnCall(exampleOnCall(start, end, '1'))
+        def version = new EventLogScheduleRepository(directory, scheduleFactory).save(schedule, ScheduleRepository.NO_VERSION)
+        schedule.scheduleVisit(exampleVisit(start, start.plusHours(1), '1'))
+        schedule.scheduleOnCall(exampleOnCall(start, end, '2'))
+        new EventLogScheduleRepository(directory, scheduleFactory).save(schedule, version)
+
+        when:
+        def result = new EventLogScheduleRepository(directory, scheduleFactory).findBy(schedule.clinicId).orElseThrow()
+
+        then:
+        result.version == 2
+        result.schedule.snapshot == schedule.snapshot
+    }
+
+    def 'should replay saves logged after the checkpoint'() {
+        given:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory, 2)
+        def schedule = scheduleFactory.create()
+        def version = ScheduleRepository.NO_VERSION
+        5.times {
+            schedule.scheduleOnCall(exampleOnCall(start.plusDays(it), end.plusDays(it), '1'))
+            version = toTest.save(schedule, version)
+        }
+
+        when:
+        def result = new EventLogScheduleRepository(directory, scheduleFactory, 2).findBy(schedule.clinicId).orElseThrow()
+
+        then:
+        Files.exists(directory.resolve("${schedule.clinicId}.checkpoint"))
+        result.version == 5
+        result.schedule.snapshot == schedule.snapshot
+    }
+
+    def 'should replay recurring on calls, in the log and in the checkpoint'() {
+        given:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory, 2)
+        def schedule = scheduleFactory.create()
+        schedule.scheduleRecurringOnCall(new RecurringOnCall(
+                new Doctor(Specialization.SURGEON), start, end, new Room('1'), Period.ofWeeks(1), start.plusWeeks(10)))
+        def version = toTest.save(schedule, ScheduleRepository.NO_VERSION)
+        schedule.scheduleVisit(exampleVisit(start.plusWeeks(1), start.plusWeeks(1).plusHours(1), '1'))
+        version = toTest.save(schedule, version)
+        schedule.erase(start.plusWeeks(2), end.plusWeeks(2))
+        toTest.save(schedule, version)
+
+        when:
+        def result = new EventLogScheduleRepository(directory, scheduleFactory, 2).findBy(schedule.clinicId).orElseThrow()
+
+        then:
+        result.version == 3
+        result.schedule.snapshot == schedule.snapshot
+    }
+
+    def 'should reject saving an outdated version'() {
+        given:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory)
+        def schedule = scheduleFactory.create()
+        toTest.save(schedule, ScheduleRepository.NO_VERSION)
+        def first = toTest.findBy(schedule.clinicId).orElseThrow()
+        def second = toTest.findBy(schedule.clinicId).orElseThrow()
+        toTest.save(first.schedule, first.version)
+
+        when:
+        toTest.save(second.schedule, second.version)
+
+        then:
+        thrown ScheduleVersionConflictException
+    }
+
+    def 'should ignore a save interrupted in the middle'() {
+        given:
+        def schedule = scheduleFactory.create()
+        schedule.scheduleOnCall(exampleOnCall(start, end, '1'))
+        new EventLogScheduleRepository(directory, scheduleFactory).save(schedule, ScheduleRepository.NO_VERSION)
+        Files.write(directory.resolve(schedule.clinicId.toString() + '.log'), [0, 0, 1, 0, 42] as byte[], StandardOpenOption.APPEND)
+
+        when:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory)
+        def result = toTest.findBy(schedule.clinicId).orElseThrow()
+
+        then:
+        result.version == 1
+        result.schedule.snapshot == schedule.snapshot
+        toTest.save(result.schedule, result.version) == 2
+    }
+
+    def 'should keep the saves made after a save which failed in the middle'() {
+        given:
+        List<FailingFileChannel> channels = []
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory) {
+            @Override
+            FileChannel openLog(Path logFile) {
+                def channel = new FailingFileChannel(super.openLog(logFile))
+                channels << channel
+                channel
+            }
+        }
+        def schedule = scheduleFactory.create()
+        def version = toTest.save(schedule, ScheduleRepository.NO_VERSION)
+        schedule.scheduleOnCall(exampleOnCall(start, end, '1'))
+        channels*.failNextWrite()
+
+        when:
+        toTest.save(schedule, version)
+
+        then:
+        thrown UncheckedIOException
+
+        when:
+        schedule.scheduleOnCall(exampleOnCall(start, end, '2'))
+        def savedVersion = toTest.save(schedule, version)
+        def result = new EventLogScheduleRepository(directory, scheduleFactory).findBy(schedule.clinicId).orElseThrow()
+
+        then:
+        savedVersion == 2
+        result.version == 2
+        result.schedule.snapshot == schedule.snapshot
+    }
+
+    def 'should save the whole state of a schedule saved for the first time'() {
+        given:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory)
+        def restored = scheduleFactory.restore(new ScheduleSnapshot(
+                UUID.randomUUID(),
+                [exampleOnCall(start, end, '1'), exampleVisit(start, start.plusHours(1), '2')] as Set
+        ))
+
+        when:
+        def version = toTest.save(restored, ScheduleRepository.NO_VERSION)
+        def result = new EventLogScheduleRepository(directory, scheduleFactory).findBy(restored.clinicId).get()
+
+        then:
+        version == 1
+        result.version == 1
+        result.schedule.snapshot == restored.snapshot
+    }
+
+    def 'should keep just the most recently used logs open and open the others again when needed'() {
+        given:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory, 1_000, 1)
+        def (first, second) = [scheduleFactory.create(), scheduleFactory.create()]
+        def firstVersion = toTest.save(first, ScheduleRepository.NO_VERSION)
+        toTest.save(second, ScheduleRepository.NO_VERSION)
+
+        when:
+        def openAfterBoth = toTest.openLogCount()
+        first.scheduleOnCall(exampleOnCall(start, end, '1'))
+        def savedVersion = toTest.save(first, firstVersion)
+        def result = toTest.findBy(first.clinicId).get()
+
+        then:
+        openAfterBoth == 1
+        toTest.openLogCount() == 1
+        savedVersion == 2
+        result.version == 2
+        result.schedule.snapshot == first.snapshot
+    }
+
+    def 'should list the most recently changed clinics first'() {
+        given:
+        def toTest = new EventLogScheduleRepository(directory, scheduleFactory)
+        def (oldest, newest, middle) = [scheduleFactory.create(), scheduleFactory.create(), scheduleFactory.create()]
+        [oldest, newest, middle].each {
+            it.scheduleOnCall(exampleOnCall(start, end, '1'))
+            toTest.save(it, ScheduleRepository.NO_VERSION)
+        }
+        touch(oldest, Instant.parse('2020-01-01T00:00:00Z'))
+        touch(middle, Instant.parse('2020-01-02T00:00:00Z'))
+        touch(newest, Instant.parse('2020-01-03T00:00:00Z'))
+        Files.createFile(directory.resolve('notes.log'))
+
+        expect:
+        toTest.findMostRecentlyChanged(2) == [newest.clinicId, middle.clinicId]
+    }
+
+    private void touch(Schedule schedule, Instant time) {
+        ['.log', '.checkpoint'].each {
+            Files.setLastModifiedTime(directory.resolve(schedule.clinicId.toString() + it), FileTime.from(time))
+        }
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to, String room) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room))
+    }
+
+    private static ScheduleEntry exampleVisit(ZonedDateTime from, ZonedDateTime to, String room) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room), new Patient('patient'))
+    }
+}
@@ -0,0 +1,70 @@
+package io.github.mat3e.schedule.domain
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.ZonedDateTime
+
+class InMemoryScheduleRepositorySpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.now()
+    private static final ZonedDateTime end = start.plusHours(2)
+
+    @Subject
+    private InMemoryScheduleRepository toTest = new InMemoryScheduleRepository()
+
+    def 'should find saved schedule with the next version'() {
+        given:
+        def schedule = new Schedule([new Room('1')])
+        schedule.scheduleOnCall(exampleOnCall())
+
+        when:
+        def version = toTest.save(schedule, ScheduleRepository.NO_VERSION)
+
+        then:
+        version == 1
+        with(toTest.findBy(schedule.clinicId).orElseThrow()) {
+            it.version == version
+            it.schedule.snapshot.entries == [exampleOnCall()] as Set
+        }
+    }
+
+    def 'should not expose changes until saved'() {
+        given:
+        def schedule = new Schedule([new Room('1')])
+        toTest.save(schedule, ScheduleRepository.NO_VERSION)
+
+        when:
+        schedule.scheduleOnCall(exampleOnCall())
+        toTest.findBy(schedule.clinicId).orElseThrow().schedule.scheduleOnCall(exampleOnCall())
+
+        then:
+        toTest.findBy(schedule.clinicId).orElseThrow().schedule.snapshot.entries.isEmpty()
+    }
+
+    def 'should reject saving an outdated version'() {
+        given:
+        def clinicId = UUID.randomUUID()
+        toTest.save(new Schedule(clinicId, [new Room('1')]), ScheduleRepository.NO_VERSION)
+        def first = toTest.findBy(clinicId).orElseThrow()
+        def second = toTest.findBy(clinicId).orElseThrow()
+        first.schedule.scheduleOnCall(exampleOnCall())
+        toTest.save(first.schedule, first.version)
+
+        when:
+        toTest.save(second.schedule, second.version)
+
+        then:
+        thrown ScheduleVersionConflictException
+
+        when:
+        toTest.save(new Schedule(clinicId, []), ScheduleRepository.NO_VERSION)
+
+        then:
+        thrown ScheduleVersionConflictException
+        toTest.findBy(clinicId).orElseThrow().version == 2
+    }
+
+    private static ScheduleEntry exampleOnCall() {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), start, end, new Room('1'))
+    }
+}
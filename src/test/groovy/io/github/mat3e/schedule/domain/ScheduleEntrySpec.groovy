@@ -122,6 +122,48 @@ class ScheduleEntrySpec extends Specification {
         new Patient('p') | true     | 'be'
     }
 
+    def 'should immerse a visit into on calls following each other'() {
+        given:
+        def visit = exampleVisit()
+
+        when:
+        def result = visit.immerseInto$schedule([exampleEntry(), exampleEntry(end, end + of(2, HOURS))] as Set)
+
+        then:
+        result == [
+                exampleEntry(start, start + of(1, HOURS)),
+                visit,
+                exampleEntry(start + of(150, MINUTES), end + of(2, HOURS))
+        ] as Set
+    }
+
+    def 'should NOT immerse a visit into on calls with a gap in between'() {
+        given:
+        def onCalls = [exampleEntry(), exampleEntry(end + of(1, MINUTES), end + of(2, HOURS))] as Set
+
+        expect:
+        exampleVisit().immerseInto$schedule(onCalls) == onCalls
+    }
+
+    def 'should throw when immersing a visit into no on calls'() {
+        when:
+        exampleVisit().immerseInto$schedule([] as Set)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    @Unroll
+    def 'should trim #description'() {
+        expect:
+        entry.trimTo$schedule(other) == expected
+
+        where:
+        other                                                  | expected                                  | description
+        exampleEntry(start + of(1, HOURS), end + of(1, HOURS)) | exampleEntry(start, start + of(1, HOURS)) | 'the end overlapping with other'
+        exampleEntry(start - of(1, HOURS), end + of(1, HOURS)) | null                                      | 'nothing left when other covers the whole entry'
+    }
+
     private static ScheduleEntry exampleEntry(ZonedDateTime from = start, ZonedDateTime to = end) {
         new ScheduleEntry(
                 exampleSurgeon(),
@@ -131,6 +173,16 @@ class ScheduleEntrySpec extends Specification {
         )
     }
 
+    private static ScheduleEntry exampleVisit() {
+        new ScheduleEntry(
+                exampleSurgeon(),
+                start + of(1, HOURS),
+                start + of(150, MINUTES),
+                new Room('foo'),
+                new Patient('p')
+        )
+    }
+
     private static Doctor exampleSurgeon() {
         new Doctor(Specialization.SURGEON)
     }
@@ -0,0 +1,80 @@
+package io.github.mat3e.schedule.domain
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.time.ZonedDateTime
+
+class ScheduleFactorySpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.now()
+    private static final ZonedDateTime end = start.plusHours(2)
+
+    @Subject
+    private ScheduleFactory toTest = new ScheduleFactory({ [new Room('1'), new Room('2')] } as RoomRepository)
+
+    def 'should restore on calls and visits'() {
+        given:
+        def snapshot = new ScheduleSnapshot(UUID.randomUUID(), [
+                exampleOnCall(start, end, '1'),
+                exampleVisit(end, end.plusHours(1), '1'),
+                exampleOnCall(start, end, '2')
+        ] as Set)
+
+        expect:
+        toTest.restore(snapshot).snapshot == snapshot
+    }
+
+    def 'should restore indexes together with entries'() {
+        given:
+        def result = toTest.restore(new ScheduleSnapshot(UUID.randomUUID(), [exampleOnCall(start, end, '1')] as Set))
+
+        when:
+        result.scheduleOnCall(exampleOnCall(start.plusHours(1), end, '1'))
+
+        then:
+        thrown RoomAlreadyTakenException
+    }
+
+    def 'should throw when restoring overlapping entries'() {
+        given:
+        def snapshot = new ScheduleSnapshot(UUID.randomUUID(), [
+                exampleOnCall(start, end, '1'),
+                exampleVisit(start.plusHours(1), end.plusHours(1), '1')
+        ] as Set)
+
+        when:
+        toTest.restore(snapshot)
+
+        then:
+        thrown IllegalArgumentException
+
+        when:
+        toTest.restoreTrusted(snapshot)
+
+        then:
+        noExceptionThrown()
+    }
+
+    def 'should throw when restoring an entry starting right at an entry with no length'() {
+        given:
+        def snapshot = new ScheduleSnapshot(UUID.randomUUID(), [
+                exampleOnCall(start.minusHours(1), start, '1'),
+                exampleOnCall(start, start, '1'),
+                exampleVisit(start, end, '1')
+        ] as Set)
+
+        when:
+        toTest.restore(snapshot)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to, String room) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room))
+    }
+
+    private static ScheduleEntry exampleVisit(ZonedDateTime from, ZonedDateTime to, String room) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room), new Patient('patient'))
+    }
+}
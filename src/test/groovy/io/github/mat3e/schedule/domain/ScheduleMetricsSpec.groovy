@@ -0,0 +1,77 @@
+package io.github.mat3e.schedule.domain
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.time.ZonedDateTime
+
+class ScheduleMetricsSpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.now()
+    private static final ZonedDateTime end = start.plusHours(2)
+
+    private MeterRegistry registry = new SimpleMeterRegistry()
+    private ScheduleMetrics metrics = new ScheduleMetrics(registry)
+
+    def 'should time commands and count rejections by reason'() {
+        given:
+        def toTest = new Schedule(UUID.randomUUID(), [new Room('1')], metrics)
+
+        when:
+        toTest.scheduleOnCall(exampleOnCall(start, end))
+        toTest.scheduleOnCall(exampleOnCall(start, end))
+
+        then:
+        thrown DateAlreadyTakenException
+
+        when:
+        toTest.scheduleVisit(exampleOnCall(start, end))
+
+        then:
+        thrown NoPatientException
+        registry.get('schedule.commands').tag('operation', 'scheduleOnCall').tag('outcome', 'accepted').timer().count() == 1
+        registry.get('schedule.commands').tag('operation', 'scheduleOnCall').tag('outcome', 'rejected').timer().count() == 1
+        registry.get('schedule.rejections').tag('reason', 'DateAlreadyTaken').counter().count() == 1
+        registry.get('schedule.rejections').tag('reason', 'NoPatient').counter().count() == 1
+    }
+
+    def 'should count every rejected entry of a batch'() {
+        given:
+        def toTest = new Schedule(UUID.randomUUID(), [new Room('1')], metrics)
+        toTest.scheduleOnCall(exampleOnCall(start, end))
+
+        when:
+        toTest.scheduleOnCalls([
+                exampleOnCall(start, end),
+                exampleOnCall(start.plusHours(1), end.plusHours(1)),
+                exampleOnCall(end, end.plusHours(1))
+        ])
+
+        then:
+        thrown BatchRejectedException
+        registry.get('schedule.commands').tag('operation', 'scheduleOnCalls').tag('outcome', 'rejected').timer().count() == 1
+        registry.get('schedule.rejections').tag('operation', 'scheduleOnCalls').tag('reason', 'DateAlreadyTaken').counter().count() == 2
+    }
+
+    def 'should follow the size of the latest schedule of a clinic'() {
+        given:
+        def scheduleFactory = new ScheduleFactory({ [new Room('1'), new Room('2')] } as RoomRepository, metrics)
+        def toTest = scheduleFactory.create()
+        toTest.scheduleOnCall(exampleOnCall(start, end))
+        def copy = toTest.copy()
+
+        when:
+        copy.scheduleOnCall(exampleOnCall(end, end.plusHours(1)))
+
+        then:
+        def clinic = toTest.clinicId.toString()
+        registry.get('schedule.factory').tag('operation', 'create').timer().count() == 1
+        registry.get('schedule.entries').tag('clinic', clinic).gauge().value() == 2
+        registry.get('schedule.index.largest').tag('clinic', clinic).tag('index', 'room').gauge().value() == 2
+        registry.get('schedule.index.largest').tag('clinic', clinic).tag('index', 'doctor').gauge().value() == 2
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room('1'))
+    }
+}
@@ -0,0 +1,87 @@
+package io.github.mat3e.schedule.domain
+
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.time.Period
+import java.time.ZoneId
+import java.time.ZoneOffset
+import java.time.ZonedDateTime
+
+class ScheduleSnapshotCodecSpec extends Specification {
+    private static final ZonedDateTime start = ZonedDateTime.of(2020, 3, 29, 1, 30, 0, 500, ZoneId.of('Europe/Warsaw'))
+    private static final ZonedDateTime end = start.plusHours(2)
+
+    def 'should decode what was encoded'() {
+        given:
+        def snapshot = new ScheduleSnapshot(UUID.randomUUID(), [
+                exampleOnCall(start, end, '1'),
+                exampleVisit(end, end.plusMinutes(30), '1', 'patient'),
+                exampleVisit(start.minusYears(1), start.minusYears(1).plusHours(1), '2', 'other patient'),
+                exampleOnCall(start.withZoneSameInstant(ZoneOffset.UTC), end, '2')
+        ] as Set)
+
+        expect:
+        ScheduleSnapshotCodec.decode(ScheduleSnapshotCodec.encode(snapshot)) == snapshot
+    }
+
+    def 'should decode recurring on calls'() {
+        given:
+        def snapshot = new ScheduleSnapshot(UUID.randomUUID(), [exampleOnCall(start, end, '1')] as Set, [
+                new RecurringOnCall(new Doctor(Specialization.SURGEON), end, end.plusHours(6), new Room('1'), Period.ofWeeks(1), end.plusYears(1)),
+                new RecurringOnCall(new Doctor(Specialization.SURGEON), start, end, new Room('2'), Period.ofDays(1), end.plusDays(10),
+                        [start.plusDays(2), start.plusDays(5)] as Set)
+        ] as Set)
+
+        expect:
+        ScheduleSnapshotCodec.decode(ScheduleSnapshotCodec.encode(snapshot)) == snapshot
+    }
+
+    def 'should decode snapshots in the format without recurring on calls'() {
+        given:
+        def snapshot = new ScheduleSnapshot(UUID.randomUUID(), [exampleOnCall(start, end, '1')] as Set)
+        def buffer = ScheduleSnapshotCodec.encode(snapshot)
+        and: 'the first version ends right after the entries, where the number of recurring on calls (0) is now'
+        buffer.put(4, (byte) 1).limit(buffer.limit() - 1)
+
+        expect:
+        ScheduleSnapshotCodec.decode(buffer) == snapshot
+        !buffer.hasRemaining()
+    }
+
+    def 'should decode from the position of the buffer'() {
+        given:
+        def first = new ScheduleSnapshot(UUID.randomUUID(), [exampleOnCall(start, end, '1')] as Set)
+        def second = new ScheduleSnapshot(UUID.randomUUID(), [] as Set)
+        def firstBytes = ScheduleSnapshotCodec.encode(first)
+        def buffer = ByteBuffer.allocate(firstBytes.remaining() + 100)
+                .put(firstBytes)
+                .put(ScheduleSnapshotCodec.encode(second))
+                .flip()
+
+        expect:
+        ScheduleSnapshotCodec.decode(buffer) == first
+        ScheduleSnapshotCodec.decode(buffer) == second
+        !buffer.hasRemaining()
+    }
+
+    def 'should throw when format is not supported'() {
+        given:
+        def buffer = ScheduleSnapshotCodec.encode(new ScheduleSnapshot(UUID.randomUUID(), [] as Set))
+        buffer.put(4, (byte) (ScheduleSnapshotCodec.FORMAT_VERSION + 1))
+
+        when:
+        ScheduleSnapshotCodec.decode(buffer)
+
+        then:
+        thrown IllegalArgumentException
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to, String room) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room))
+    }
+
+    private static ScheduleEntry exampleVisit(ZonedDateTime from, ZonedDateTime to, String room, String patient) {
+        new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room), new Patient(patient))
+    }
+}
@@ -6,9 +6,18 @@ import spock.lang.Subject
 import spock.lang.Unroll
 
 import java.time.Duration
+import java.time.Period
+import java.time.ZoneId
+import java.time.ZoneOffset
 import java.time.ZonedDateTime
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.ForkJoinPool
 
 import static java.time.temporal.ChronoUnit.HOURS
+import static java.time.temporal.ChronoUnit.MINUTES
+import static java.util.stream.Collectors.toList
 
 class ScheduleSpec extends Specification {
     private static final ZonedDateTime start = ZonedDateTime.now()
@@ -74,6 +83,57 @@ class ScheduleSpec extends Specification {
         e.message.contains(room1.name)
     }
 
+    def 'should schedule on calls right after each other and in other rooms'() {
+        given:
+        def room1 = new Room('1')
+        def room2 = new Room('2')
+        and:
+        toTest = new Schedule([room1, room2])
+
+        when:
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, room1))
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), end, end.plusHours(2), room1))
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start.minusHours(2), start, room1))
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, room2))
+
+        then:
+        noExceptionThrown()
+
+        when:
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), end.minusMinutes(1), end.plusMinutes(1), room1))
+
+        then:
+        thrown RoomAlreadyTakenException
+    }
+
+    def 'should accept just one of the concurrent on calls for the same date'() {
+        given:
+        toTest = new Schedule([new Room('1'), new Room('2')])
+        and:
+        def executor = Executors.newFixedThreadPool(4)
+        def startSignal = new CountDownLatch(1)
+
+        when:
+        def results = (0..<20).collect { i ->
+            executor.submit({
+                startSignal.await()
+                try {
+                    toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, new Room(i % 2 == 0 ? '1' : '2')))
+                    return true
+                } catch (BusinessScheduleException ignored) {
+                    return false
+                }
+            } as Callable<Boolean>)
+        }
+        startSignal.countDown()
+        def accepted = results.count { it.get() }
+        executor.shutdown()
+
+        then:
+        accepted == 2
+        toTest.snapshot.entries.size() == 2
+    }
+
     def 'should throw when scheduling on call with patient'() {
         when:
         toTest.scheduleOnCall(exampleVisit())
@@ -202,6 +262,234 @@ class ScheduleSpec extends Specification {
         ] as Set
     }
 
+    def 'should schedule a visit within on calls split by a previous visit'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall(start, end))
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)))
+        and:
+        toTest.scheduleVisit(exampleVisit(start.plusHours(1), end.plusHours(1)))
+
+        when:
+        toTest.scheduleVisit(new ScheduleEntry(exampleSurgeon(), end.plusHours(1), end.plusHours(2), exampleRoom(), new Patient('other')))
+
+        then:
+        toTest.snapshot.entries == [
+                exampleOnCall(start, start.plusHours(1)),
+                exampleVisit(start.plusHours(1), end.plusHours(1)),
+                new ScheduleEntry(exampleSurgeon(), end.plusHours(1), end.plusHours(2), exampleRoom(), new Patient('other'))
+        ] as Set
+    }
+
+    def 'should schedule a batch of on calls and visits'() {
+        when:
+        toTest.scheduleOnCalls([
+                exampleOnCall(end, end.plusHours(2)),
+                exampleOnCall(start, end)
+        ])
+        and:
+        toTest.scheduleVisits([
+                exampleVisit(start, start.plusHours(1)),
+                exampleVisit(end.plusHours(1), end.plusHours(2))
+        ])
+
+        then:
+        toTest.snapshot.entries == [
+                exampleVisit(start, start.plusHours(1)),
+                exampleOnCall(start.plusHours(1), end),
+                exampleOnCall(end, end.plusHours(1)),
+                exampleVisit(end.plusHours(1), end.plusHours(2))
+        ] as Set
+    }
+
+    def 'should reject a whole batch and report every conflicting entry'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+        and:
+        def conflictingWithExisting = exampleOnCall(start.plusHours(1), end.plusHours(1))
+        def conflictingWithBatch = exampleOnCall(end.plusHours(3), end.plusHours(5))
+        def withPatient = exampleVisit(end.plusHours(6), end.plusHours(7))
+
+        when:
+        toTest.scheduleOnCalls([
+                conflictingWithExisting,
+                exampleOnCall(end.plusHours(2), end.plusHours(4)),
+                conflictingWithBatch,
+                withPatient
+        ])
+
+        then:
+        def e = thrown BatchRejectedException
+        e.rejections.keySet() as List == [conflictingWithExisting, conflictingWithBatch, withPatient]
+        e.rejections[conflictingWithExisting] instanceof DateAlreadyTakenException
+        e.rejections[conflictingWithBatch] instanceof DateAlreadyTakenException
+        e.rejections[withPatient] instanceof OnCallWithPatientException
+        toTest.snapshot.entries == [exampleOnCall()] as Set
+    }
+
+    def 'should reject a whole batch of visits'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+
+        when:
+        toTest.scheduleVisits([
+                exampleVisit(start, start.plusHours(1)),
+                exampleVisit(start.plusHours(1), end.plusHours(1))
+        ])
+
+        then:
+        def e = thrown BatchRejectedException
+        e.rejections[exampleVisit(start.plusHours(1), end.plusHours(1))] instanceof NoDoctorOnCallException
+        toTest.snapshot.entries == [exampleOnCall()] as Set
+    }
+
+    def 'should import a whole roster into an empty schedule'() {
+        given:
+        def otherRoom = new Room('2')
+        toTest = new Schedule([exampleRoom(), otherRoom])
+        def roster = [
+                exampleOnCall(end, end.plusHours(2)),
+                exampleVisit(start, start.plusHours(1)),
+                exampleOnCall(start.plusHours(1), end),
+                new ScheduleEntry(exampleSurgeon(), start.plusHours(1), end.plusHours(2), otherRoom)
+        ]
+
+        when:
+        toTest.importEntries(roster, ForkJoinPool.commonPool())
+
+        then:
+        toTest.snapshot.entries == roster as Set
+        toTest.pendingChanges.changes.size() == 4
+        toTest.entriesFor(exampleRoom(), start, end).collect(toList()) == [exampleVisit(start, start.plusHours(1)), exampleOnCall(start.plusHours(1), end)]
+
+        when:
+        toTest.scheduleOnCall(exampleOnCall())
+
+        then:
+        thrown RoomAlreadyTakenException
+    }
+
+    def 'should reject a whole roster and report every conflicting entry in the order of dates'() {
+        given:
+        def otherRoom = new Room('2')
+        toTest = new Schedule([exampleRoom(), otherRoom])
+        def onCallInOtherRoom = new ScheduleEntry(exampleSurgeon(), start, end, otherRoom)
+        def visitDuringOtherOnCall = exampleVisit(start.plusHours(1), end)
+        def overlappingOnCall = exampleOnCall(end.plusHours(1), end.plusHours(3))
+
+        when:
+        toTest.importEntries([
+                overlappingOnCall,
+                exampleOnCall(end, end.plusHours(2)),
+                visitDuringOtherOnCall,
+                onCallInOtherRoom
+        ], ForkJoinPool.commonPool())
+
+        then:
+        def e = thrown BatchRejectedException
+        e.rejections.keySet() as List == [visitDuringOtherOnCall, overlappingOnCall]
+        e.rejections[visitDuringOtherOnCall] instanceof RoomMismatchException
+        e.rejections[overlappingOnCall] instanceof RoomAlreadyTakenException
+        toTest.snapshot.entries.isEmpty()
+    }
+
+    def 'should import just into an empty schedule'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+
+        when:
+        toTest.importEntries([exampleOnCall(end, end.plusHours(2))], ForkJoinPool.commonPool())
+
+        then:
+        thrown IllegalStateException
+    }
+
+    def 'should not change a snapshot taken before'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+        def snapshot = toTest.snapshot
+
+        when:
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)))
+        toTest.scheduleVisit(exampleVisit(start, start.plusHours(1)))
+
+        then:
+        snapshot.entries == [exampleOnCall()] as Set
+    }
+
+    def 'should give the entries back as they were scheduled, whatever their zones and years'() {
+        given:
+        def onCallFrom = start.withZoneSameInstant(ZoneId.of('Europe/Warsaw'))
+        def onCallTo = end.withZoneSameInstant(ZoneOffset.UTC)
+        def visitFrom = (start + Duration.of(30, MINUTES)).withZoneSameInstant(ZoneId.of('Asia/Tokyo'))
+        def visitTo = start + Duration.of(1, HOURS)
+        def farFuture = ZonedDateTime.of(2500, 1, 1, 8, 0, 0, 0, ZoneId.of('Europe/Warsaw'))
+        def farPast = ZonedDateTime.of(1600, 1, 1, 8, 0, 0, 0, ZoneId.of('Europe/Warsaw'))
+
+        when:
+        toTest.scheduleOnCall(exampleOnCall(onCallFrom, onCallTo))
+        toTest.scheduleVisit(exampleVisit(visitFrom, visitTo))
+        toTest.scheduleOnCall(exampleOnCall(farFuture, farFuture.plusHours(2)))
+        toTest.scheduleOnCall(exampleOnCall(farPast, farPast.plusHours(2)))
+
+        then:
+        toTest.snapshot.entries == [
+                exampleOnCall(onCallFrom, visitFrom),
+                exampleVisit(visitFrom, visitTo),
+                exampleOnCall(visitTo, onCallTo),
+                exampleOnCall(farFuture, farFuture.plusHours(2)),
+                exampleOnCall(farPast, farPast.plusHours(2))
+        ] as Set
+    }
+
+    def 'should compare dates of the same instant in different zones the same way as the entries do'() {
+        given:
+        def existing = exampleOnCall(start.withZoneSameInstant(ZoneOffset.UTC), end.withZoneSameInstant(ZoneOffset.UTC))
+        and: 'same instant as the existing end, but later (or earlier) local time'
+        def laterLocally = exampleOnCall(end.withZoneSameInstant(ZoneOffset.ofHours(1)), end.plusHours(1))
+        def earlierLocally = exampleOnCall(end.withZoneSameInstant(ZoneOffset.ofHours(-1)), end.plusHours(1))
+        def other = new Schedule([])
+        toTest.scheduleOnCall(existing)
+        other.scheduleOnCall(existing)
+
+        when:
+        def laterLocallyOutcome = toTest.tryScheduleOnCall(laterLocally)
+        def earlierLocallyOutcome = other.tryScheduleOnCall(earlierLocally)
+
+        then:
+        !existing.interferesWith(laterLocally)
+        laterLocallyOutcome.accepted
+        existing.interferesWith(earlierLocally)
+        earlierLocallyOutcome == new ScheduleOutcome.Rejection.DateAlreadyTaken(existing)
+    }
+
+    def 'should not allow modifying a snapshot'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+
+        when:
+        toTest.snapshot.entries.clear()
+
+        then:
+        thrown UnsupportedOperationException
+    }
+
+    def 'should keep a single instance of each room, doctor and patient'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall(start, end))
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)))
+
+        when:
+        toTest.scheduleVisit(exampleVisit(start, start.plusHours(1)))
+        toTest.scheduleVisit(exampleVisit(end, end.plusHours(1)))
+        and:
+        List<ScheduleEntry> result = toTest.snapshot.entries.sort { it.from }
+
+        then:
+        result.size() == 4
+        result.every { it.room.is(result[0].room) && it.doctor.is(result[0].doctor) }
+        result[0].patient.is(result[2].patient)
+    }
+
     def 'should throw when erasing with wrong dates'() {
         when:
         toTest.erase(end, start)
@@ -239,6 +527,235 @@ class ScheduleSpec extends Specification {
         result[1] == exampleVisit(end + Duration.of(4, HOURS), end + Duration.of(5, HOURS))
     }
 
+    def 'should find free rooms'() {
+        given:
+        def room2 = new Room('2')
+        toTest = new Schedule([exampleRoom(), room2])
+        toTest.scheduleOnCall(exampleOnCall())
+
+        expect:
+        toTest.findFreeRooms(start + Duration.of(1, HOURS), end + Duration.of(1, HOURS)) == [room2] as Set
+        toTest.findFreeRooms(end, end + Duration.of(1, HOURS)) == [exampleRoom(), room2] as Set
+    }
+
+    def 'should find the next free slot'() {
+        given:
+        def room2 = new Room('2')
+        toTest = new Schedule([exampleRoom(), room2])
+        toTest.scheduleOnCall(exampleOnCall())
+        toTest.scheduleOnCall(exampleOnCall(end + Duration.of(1, HOURS), end + Duration.of(3, HOURS)))
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start - Duration.of(1, HOURS), end + Duration.of(5, HOURS), room2))
+
+        expect:
+        toTest.findNextFreeSlot(Duration.of(1, HOURS), start) == Optional.of(new FreeSlot(exampleRoom(), end, end + Duration.of(1, HOURS)))
+        toTest.findNextFreeSlot(Duration.of(2, HOURS), start) == Optional.of(new FreeSlot(exampleRoom(), end + Duration.of(3, HOURS), end + Duration.of(5, HOURS)))
+        new Schedule([]).findNextFreeSlot(Duration.of(1, HOURS), start) == Optional.empty()
+    }
+
+    def 'should find slots for visits within following on calls'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+        toTest.scheduleOnCall(exampleOnCall(end, end + Duration.of(2, HOURS)))
+        toTest.scheduleVisit(exampleVisit(end + Duration.of(1, HOURS), end + Duration.of(2, HOURS)))
+        toTest.scheduleOnCall(exampleOnCall(end + Duration.of(3, HOURS), end + Duration.of(4, HOURS)))
+
+        when:
+        def result = toTest.findVisitSlots(exampleSurgeon(), Duration.of(1, HOURS), start + Duration.of(1, HOURS), end + Duration.of(5, HOURS))
+
+        then:
+        result == [
+                new FreeSlot(exampleRoom(), start + Duration.of(1, HOURS), end + Duration.of(1, HOURS)),
+                new FreeSlot(exampleRoom(), end + Duration.of(3, HOURS), end + Duration.of(4, HOURS))
+        ]
+
+        when:
+        toTest.scheduleVisit(exampleVisit(end, end + Duration.of(1, HOURS)))
+
+        then:
+        noExceptionThrown()
+    }
+
+    def 'should evict entries which already ended'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+        toTest.scheduleOnCall(exampleOnCall(end, end + Duration.of(2, HOURS)))
+        toTest.scheduleOnCall(exampleOnCall(end + Duration.of(3, HOURS), end + Duration.of(5, HOURS)))
+
+        when:
+        def result = toTest.evictEndedBy(end + Duration.of(1, HOURS))
+
+        then:
+        result == [exampleOnCall()] as Set
+        toTest.snapshot.entries == [
+                exampleOnCall(end, end + Duration.of(2, HOURS)),
+                exampleOnCall(end + Duration.of(3, HOURS), end + Duration.of(5, HOURS))
+        ] as Set
+    }
+
+    def 'should erase many windows at once'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+        toTest.scheduleOnCall(exampleOnCall(end, end + Duration.of(2, HOURS)))
+        toTest.scheduleOnCall(exampleOnCall(end + Duration.of(3, HOURS), end + Duration.of(4, HOURS)))
+
+        when:
+        toTest.erase([
+                new TimeWindow(end, end + Duration.of(1, HOURS)),
+                new TimeWindow(start + Duration.of(1, HOURS), end),
+                new TimeWindow(end + Duration.of(2, HOURS), end + Duration.of(3, HOURS)),
+                new TimeWindow(end + Duration.of(150, MINUTES), end + Duration.of(5, HOURS))
+        ])
+
+        then:
+        toTest.snapshot.entries == [
+                exampleOnCall(start, start + Duration.of(1, HOURS)),
+                exampleOnCall(end + Duration.of(1, HOURS), end + Duration.of(2, HOURS))
+        ] as Set
+    }
+
+    def 'should erase many windows just in the given room'() {
+        given:
+        def otherRoom = new Room('2')
+        toTest = new Schedule([exampleRoom(), otherRoom])
+        toTest.scheduleOnCall(exampleOnCall())
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, otherRoom))
+
+        when:
+        toTest.erase([new TimeWindow(start - Duration.of(1, HOURS), end + Duration.of(1, HOURS))], otherRoom)
+
+        then:
+        toTest.snapshot.entries == [exampleOnCall()] as Set
+
+        when:
+        toTest.erase([new TimeWindow(start, end)], otherRoom)
+
+        then:
+        thrown NothingToEraseException
+        toTest.tryErase([new TimeWindow(start, end)], exampleSurgeon()).is(ScheduleOutcome.Accepted.INSTANCE)
+    }
+
+    def 'should stream entries within the dates in the order of their start dates'() {
+        given:
+        def otherRoom = new Room('2')
+        toTest = new Schedule([exampleRoom(), otherRoom])
+        toTest.scheduleOnCall(exampleOnCall(end, end + Duration.of(2, HOURS)))
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start + Duration.of(1, HOURS), end + Duration.of(1, HOURS), otherRoom))
+        toTest.scheduleOnCall(exampleOnCall())
+        toTest.scheduleOnCall(exampleOnCall(end + Duration.of(3, HOURS), end + Duration.of(4, HOURS)))
+
+        when:
+        def result = toTest.entriesBetween(start + Duration.of(1, HOURS), end + Duration.of(1, HOURS))
+        toTest.erase(start - Duration.of(1, HOURS), end + Duration.of(5, HOURS))
+
+        then:
+        result.collect(toList()) == [
+                exampleOnCall(),
+                new ScheduleEntry(exampleSurgeon(), start + Duration.of(1, HOURS), end + Duration.of(1, HOURS), otherRoom),
+                exampleOnCall(end, end + Duration.of(2, HOURS))
+        ]
+        toTest.entriesBetween(start, end + Duration.of(5, HOURS)).count() == 0
+    }
+
+    def 'should stream entries of a room or a doctor in the order of their start dates'() {
+        given:
+        def otherRoom = new Room('2')
+        toTest = new Schedule([exampleRoom(), otherRoom])
+        toTest.scheduleOnCall(exampleOnCall(end, end + Duration.of(2, HOURS)))
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start + Duration.of(1, HOURS), end + Duration.of(1, HOURS), otherRoom))
+        toTest.scheduleOnCall(exampleOnCall())
+
+        expect:
+        toTest.entriesFor(exampleRoom(), start, end + Duration.of(2, HOURS)).collect(toList()) ==
+                [exampleOnCall(), exampleOnCall(end, end + Duration.of(2, HOURS))]
+        toTest.entriesFor(exampleSurgeon(), start, start + Duration.of(2, HOURS)).collect(toList()) ==
+                [exampleOnCall(), new ScheduleEntry(exampleSurgeon(), start + Duration.of(1, HOURS), end + Duration.of(1, HOURS), otherRoom)]
+        toTest.entriesFor(new Room('3'), start, end).count() == 0
+    }
+
+    def 'should report rejections with the conflicting entry instead of throwing'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+
+        when:
+        def accepted = toTest.tryScheduleOnCall(exampleOnCall(end, end + Duration.of(1, HOURS)))
+        def rejected = toTest.tryScheduleOnCall(exampleOnCall(start + Duration.of(1, HOURS), end))
+
+        then:
+        noExceptionThrown()
+        accepted.is(ScheduleOutcome.Accepted.INSTANCE)
+        rejected == new ScheduleOutcome.Rejection.DateAlreadyTaken(exampleOnCall())
+        toTest.snapshot.entries == [exampleOnCall(), exampleOnCall(end, end + Duration.of(1, HOURS))] as Set
+    }
+
+    def 'should report the same rejection instance when there is nothing conflicting'() {
+        expect:
+        toTest.tryScheduleOnCall(exampleVisit()).is(ScheduleOutcome.Rejection.OnCallWithPatient.INSTANCE)
+        toTest.tryScheduleVisit(exampleOnCall()).is(ScheduleOutcome.Rejection.NoPatient.INSTANCE)
+        toTest.tryScheduleVisit(exampleVisit()).is(ScheduleOutcome.Rejection.NoDoctorOnCall.INSTANCE)
+        toTest.tryErase(start, end).is(ScheduleOutcome.Rejection.NothingToErase.INSTANCE)
+    }
+
+    def 'should report every rejected entry of a batch'() {
+        given:
+        toTest.scheduleOnCall(exampleOnCall())
+        def conflicting = exampleOnCall(start + Duration.of(1, HOURS), end + Duration.of(1, HOURS))
+
+        when:
+        def result = toTest.tryScheduleOnCalls([conflicting, exampleOnCall(end + Duration.of(2, HOURS), end + Duration.of(3, HOURS))])
+
+        then:
+        result == new ScheduleOutcome.Rejection.BatchRejected([(conflicting): new ScheduleOutcome.Rejection.DateAlreadyTaken(exampleOnCall())])
+        toTest.snapshot.entries == [exampleOnCall()] as Set
+    }
+
+    def 'should keep a recurring on call as a single rule and compute its occurrences'() {
+        when:
+        toTest.scheduleRecurringOnCall(exampleWeeklyOnCall())
+
+        then:
+        toTest.snapshot.entries.empty
+        toTest.snapshot.recurringOnCalls == [exampleWeeklyOnCall()] as Set
+        toTest.entriesBetween(start.plusDays(1), start.plusWeeks(2).plusDays(1)).collect(toList()) ==
+                [exampleOnCall(start.plusWeeks(1), end.plusWeeks(1)), exampleOnCall(start.plusWeeks(2), end.plusWeeks(2))]
+
+        when: 'scheduling on call interfering with an occurrence'
+        toTest.scheduleOnCall(exampleOnCall(end.plusWeeks(3) - Duration.of(1, HOURS), end.plusWeeks(3)))
+
+        then:
+        thrown DateAlreadyTakenException
+    }
+
+    def 'should turn just the occurrence split by a visit into entries'() {
+        given:
+        toTest.scheduleRecurringOnCall(exampleWeeklyOnCall())
+        def visitStart = start.plusWeeks(1) + Duration.of(30, MINUTES)
+        def visitEnd = start.plusWeeks(1) + Duration.of(90, MINUTES)
+
+        when:
+        toTest.scheduleVisit(exampleVisit(visitStart, visitEnd))
+
+        then:
+        toTest.snapshot.entries == [
+                exampleOnCall(start.plusWeeks(1), visitStart),
+                exampleVisit(visitStart, visitEnd),
+                exampleOnCall(visitEnd, end.plusWeeks(1))
+        ] as Set
+        toTest.snapshot.recurringOnCalls*.skipped == [[start.plusWeeks(1)] as Set]
+    }
+
+    def 'should turn just the occurrence trimmed by erase into an entry'() {
+        given:
+        toTest.scheduleRecurringOnCall(exampleWeeklyOnCall())
+
+        when:
+        toTest.erase(start.plusWeeks(2) + Duration.of(1, HOURS), end.plusWeeks(3) + Duration.of(1, HOURS))
+
+        then:
+        toTest.snapshot.entries == [exampleOnCall(start.plusWeeks(2), start.plusWeeks(2) + Duration.of(1, HOURS))] as Set
+        toTest.entriesBetween(start, end.plusWeeks(4)).map { it.from }.collect(toList()) ==
+                [start, start.plusWeeks(1), start.plusWeeks(2)]
+    }
+
     @NotNull
     private static ScheduleEntry exampleOnCall(ZonedDateTime from = start, ZonedDateTime to = end) {
         new ScheduleEntry(
@@ -260,6 +777,17 @@ class ScheduleSpec extends Specification {
         )
     }
 
+    private static RecurringOnCall exampleWeeklyOnCall() {
+        new RecurringOnCall(
+                exampleSurgeon(),
+                start,
+                end,
+                exampleRoom(),
+                Period.ofWeeks(1),
+                start.plusWeeks(4)
+        )
+    }
+
     private static Doctor exampleSurgeon() {
         new Doctor(Specialization.SURGEON)
     }
@@ -0,0 +1,112 @@
+package io.github.mat3e.schedule.domain
+
+import io.micrometer.core.instrument.MeterRegistry
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.Executors
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+class ScheduleWarmupSpec extends Specification {
+    private MeterRegistry registry = new SimpleMeterRegistry()
+    private InMemoryScheduleRepository stored = new InMemoryScheduleRepository()
+
+    def 'should load every clinic into the cache'() {
+        given:
+        def (first, second, unknown) = [storedSchedule(), storedSchedule(), UUID.randomUUID()]
+        def cache = new CachingScheduleRepository(stored, 10, registry)
+        def executor = Executors.newFixedThreadPool(2)
+        def toTest = new ScheduleWarmup(cache, executor, 2, registry)
+
+        when:
+        def result = toTest.warmUp([first, second, unknown, first]).get(5, TimeUnit.SECONDS)
+        executor.shutdown()
+
+        then:
+        result == new WarmupProgress(3, 2, 1, 0)
+        toTest.ready
+        cache.size() == 2
+        registry.get('schedule.warmup').tag('clinic', first.toString()).tag('outcome', 'loaded').timer().count() == 1
+        registry.get('schedule.warmup').tag('clinic', unknown.toString()).tag('outcome', 'missing').timer().count() == 1
+        registry.get('schedule.warmup.remaining').gauge().value() == 0
+    }
+
+    def 'should load no more clinics at a time than allowed'() {
+        given:
+        def running = new AtomicInteger()
+        def mostRunning = new AtomicInteger()
+        ScheduleRepository slow = Stub() {
+            findBy(_) >> {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), { a, b -> Math.max(a, b) })
+                Thread.sleep(10)
+                running.decrementAndGet()
+                Optional.empty()
+            }
+        }
+        def executor = Executors.newFixedThreadPool(8)
+        def toTest = new ScheduleWarmup(slow, executor, 3, registry)
+
+        when:
+        def result = toTest.warmUp((1..6).collect { UUID.randomUUID() }).get(5, TimeUnit.SECONDS)
+        executor.shutdown()
+
+        then:
+        result == new WarmupProgress(6, 0, 6, 0)
+        mostRunning.get() <= 3
+    }
+
+    def 'should not be ready until every clinic was tried'() {
+        given:
+        def release = new CountDownLatch(1)
+        ScheduleRepository blocked = Stub() {
+            findBy(_) >> {
+                release.await()
+                throw new IllegalStateException('Storage unavailable')
+            }
+        }
+        def executor = Executors.newSingleThreadExecutor()
+        def toTest = new ScheduleWarmup(blocked, executor, 1, registry)
+
+        expect:
+        !toTest.ready
+
+        when:
+        def result = toTest.warmUp([UUID.randomUUID()])
+
+        then:
+        !toTest.ready
+
+        when:
+        release.countDown()
+        def progress = result.get(5, TimeUnit.SECONDS)
+        executor.shutdown()
+
+        then:
+        progress == new WarmupProgress(1, 0, 0, 1)
+        toTest.ready
+
+        when:
+        toTest.warmUp([])
+
+        then:
+        thrown IllegalStateException
+    }
+
+    def 'should count clinics as failed when no loader could start'() {
+        given:
+        def toTest = new ScheduleWarmup(stored, { throw new RejectedExecutionException() } as Executor, 2, registry)
+
+        expect:
+        toTest.warmUp([storedSchedule(), storedSchedule()]).get(5, TimeUnit.SECONDS) == new WarmupProgress(2, 0, 0, 2)
+    }
+
+    private UUID storedSchedule() {
+        def schedule = new Schedule([new Room('1')])
+        stored.save(schedule, ScheduleRepository.NO_VERSION)
+        schedule.clinicId
+    }
+}
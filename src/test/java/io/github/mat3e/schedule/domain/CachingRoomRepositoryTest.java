@@ -0,0 +1,48 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@Tag("unit")
+class CachingRoomRepositoryTest {
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final List<Room> rooms = new ArrayList<>(List.of(new Room("1")));
+    private final AtomicInteger loads = new AtomicInteger();
+    private final CachingRoomRepository toTest = new CachingRoomRepository(() -> {
+        loads.incrementAndGet();
+        return rooms;
+    }, registry);
+
+    @Test
+    @DisplayName("should load rooms once until they change")
+    void findAll_refreshesOnChange() {
+        // given
+        toTest.findAll();
+        toTest.findAll();
+
+        // when
+        rooms.add(new Room("2"));
+        var beforeChange = toTest.findAll();
+        toTest.roomsChanged();
+        var afterChange = toTest.findAll();
+
+        // then
+        assertAll(
+                () -> assertEquals(List.of(new Room("1")), beforeChange),
+                () -> assertEquals(List.of(new Room("1"), new Room("2")), afterChange),
+                () -> assertEquals(2, loads.get()),
+                () -> assertEquals(2.0, registry.get("cache.gets").tag("cache", "rooms").tag("result", "hit").counter().count()),
+                () -> assertEquals(2.0, registry.get("cache.gets").tag("cache", "rooms").tag("result", "miss").counter().count())
+        );
+    }
+}
@@ -0,0 +1,225 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("unit")
+class CachingScheduleRepositoryTest {
+    private static final ZonedDateTime start = ZonedDateTime.now();
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final InMemoryScheduleRepository stored = new InMemoryScheduleRepository();
+    private final AtomicInteger loads = new AtomicInteger();
+    private final ScheduleRepository countingLoads = new ScheduleRepository() {
+        @Override
+        public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+            loads.incrementAndGet();
+            return stored.findBy(clinicId);
+        }
+
+        @Override
+        public long save(final Schedule schedule, final long expectedVersion) {
+            return stored.save(schedule, expectedVersion);
+        }
+    };
+
+    @Test
+    @DisplayName("should load each schedule just once")
+    void findBy_loadsOnce() {
+        // given
+        var toTest = new CachingScheduleRepository(countingLoads, 10, registry);
+        var schedule = exampleSchedule();
+        stored.save(schedule, ScheduleRepository.NO_VERSION);
+
+        // when
+        toTest.findBy(schedule.getClinicId()).orElseThrow().getSchedule().scheduleOnCall(exampleOnCall());
+        var result = toTest.findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(1, loads.get()),
+                () -> assertEquals(1, result.getVersion()),
+                () -> assertEquals(Set.of(), result.getSchedule().getSnapshot().getEntries()),
+                () -> assertEquals(1.0, registry.get("cache.gets").tag("cache", "schedules").tag("result", "hit").counter().count()),
+                () -> assertEquals(1.0, registry.get("cache.gets").tag("cache", "schedules").tag("result", "miss").counter().count())
+        );
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used schedule")
+    void findBy_evictsLeastRecentlyUsed() {
+        // given
+        var toTest = new CachingScheduleRepository(countingLoads, 2, registry);
+        var first = exampleSchedule();
+        var second = exampleSchedule();
+        toTest.save(first, ScheduleRepository.NO_VERSION);
+        toTest.save(second, ScheduleRepository.NO_VERSION);
+        toTest.findBy(first.getClinicId());
+
+        // when
+        toTest.save(exampleSchedule(), ScheduleRepository.NO_VERSION);
+        toTest.findBy(first.getClinicId());
+        toTest.findBy(second.getClinicId());
+
+        // then
+        assertAll(
+                () -> assertEquals(1, loads.get()),
+                () -> assertEquals(2, toTest.size()),
+                () -> assertEquals(2.0, registry.get("cache.evictions").tag("cache", "schedules").counter().count()),
+                () -> assertEquals(2.0, registry.get("cache.size").tag("cache", "schedules").gauge().value())
+        );
+    }
+
+    @Test
+    @DisplayName("should drop the cached schedule when the underlying repository rejects the save")
+    void save_invalidatesOnConflict() {
+        // given
+        var toTest = new CachingScheduleRepository(countingLoads, 10, registry);
+        var schedule = exampleSchedule();
+        toTest.save(schedule, ScheduleRepository.NO_VERSION);
+        // and
+        var changedElsewhere = stored.findBy(schedule.getClinicId()).orElseThrow();
+        changedElsewhere.getSchedule().scheduleOnCall(exampleOnCall());
+        stored.save(changedElsewhere.getSchedule(), changedElsewhere.getVersion());
+
+        // when
+        var cached = toTest.findBy(schedule.getClinicId()).orElseThrow();
+        assertThrows(
+                ScheduleVersionConflictException.class,
+                () -> toTest.save(cached.getSchedule(), cached.getVersion())
+        );
+        var result = toTest.findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(2, result.getVersion()),
+                () -> assertEquals(Set.of(exampleOnCall()), result.getSchedule().getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should pass saves on once enough of them were collected")
+    void save_writesBehind() {
+        // given
+        var toTest = new CachingScheduleRepository(countingLoads, 10, 2, registry);
+        var schedule = exampleSchedule();
+        toTest.save(schedule, ScheduleRepository.NO_VERSION);
+
+        // when
+        var loaded = toTest.findBy(schedule.getClinicId()).orElseThrow();
+        loaded.getSchedule().scheduleOnCall(exampleOnCall());
+        long firstVersion = toTest.save(loaded.getSchedule(), loaded.getVersion());
+        var storedAfterFirst = stored.findBy(schedule.getClinicId()).orElseThrow();
+        // and
+        var reloaded = toTest.findBy(schedule.getClinicId()).orElseThrow();
+        reloaded.getSchedule().scheduleOnCall(exampleOnCall(end, end.plusHours(1)));
+        long secondVersion = toTest.save(reloaded.getSchedule(), reloaded.getVersion());
+
+        // then
+        var storedAfterSecond = stored.findBy(schedule.getClinicId()).orElseThrow();
+        assertAll(
+                () -> assertEquals(2, firstVersion),
+                () -> assertEquals(1, storedAfterFirst.getVersion()),
+                () -> assertEquals(3, secondVersion),
+                () -> assertEquals(3, storedAfterSecond.getVersion()),
+                () -> assertEquals(
+                        Set.of(exampleOnCall(), exampleOnCall(end, end.plusHours(1))),
+                        storedAfterSecond.getSchedule().getSnapshot().getEntries()
+                ),
+                () -> assertThrows(
+                        ScheduleVersionConflictException.class,
+                        () -> toTest.save(loaded.getSchedule(), loaded.getVersion())
+                )
+        );
+    }
+
+    @Test
+    @DisplayName("should evict the least recently used schedule without saves to pass on")
+    void save_evictsSkippingPendingSaves() {
+        // given
+        var toTest = new CachingScheduleRepository(countingLoads, 2, 10, registry);
+        var pending = exampleSchedule();
+        var first = exampleSchedule();
+        toTest.save(pending, ScheduleRepository.NO_VERSION);
+        toTest.save(pending, 1);
+        toTest.save(first, ScheduleRepository.NO_VERSION);
+
+        // when
+        toTest.save(exampleSchedule(), ScheduleRepository.NO_VERSION);
+        toTest.findBy(pending.getClinicId());
+        toTest.findBy(first.getClinicId());
+
+        // then
+        assertAll(
+                () -> assertEquals(1, loads.get()),
+                () -> assertEquals(2, toTest.size()),
+                () -> assertEquals(2.0, registry.get("cache.evictions").tag("cache", "schedules").counter().count())
+        );
+    }
+
+    @Test
+    @DisplayName("should fail the next save of the clinic which lost its saves, not the save which passed them on")
+    void save_failsClinicWhichLostSaves() {
+        // given
+        var toTest = new CachingScheduleRepository(countingLoads, 10, 2, registry);
+        var lost = exampleSchedule();
+        var other = exampleSchedule();
+        toTest.save(lost, ScheduleRepository.NO_VERSION);
+        toTest.save(other, ScheduleRepository.NO_VERSION);
+        // and
+        var changedElsewhere = stored.findBy(lost.getClinicId()).orElseThrow();
+        changedElsewhere.getSchedule().scheduleOnCall(exampleOnCall());
+        stored.save(changedElsewhere.getSchedule(), changedElsewhere.getVersion());
+        // and
+        var lostCopy = toTest.findBy(lost.getClinicId()).orElseThrow();
+        lostCopy.getSchedule().scheduleOnCall(exampleOnCall(end, end.plusHours(1)));
+        long lostVersion = toTest.save(lostCopy.getSchedule(), lostCopy.getVersion());
+
+        // when
+        var otherCopy = toTest.findBy(other.getClinicId()).orElseThrow();
+        otherCopy.getSchedule().scheduleOnCall(exampleOnCall());
+        long otherVersion = toTest.save(otherCopy.getSchedule(), otherCopy.getVersion());
+
+        // then
+        var result = assertThrows(
+                ScheduleVersionConflictException.class,
+                () -> toTest.save(lostCopy.getSchedule(), lostVersion)
+        );
+        assertAll(
+                () -> assertEquals(2, otherVersion),
+                () -> assertEquals(2, stored.findBy(other.getClinicId()).orElseThrow().getVersion()),
+                () -> assertEquals(ScheduleVersionConflictException.class, result.getCause().getClass()),
+                () -> assertEquals(
+                        Set.of(exampleOnCall()),
+                        toTest.findBy(lost.getClinicId()).orElseThrow().getSchedule().getSnapshot().getEntries()
+                )
+        );
+    }
+
+    private static Schedule exampleSchedule() {
+        return new Schedule(UUID.randomUUID(), List.of(new Room("1")));
+    }
+
+    private static ScheduleEntry exampleOnCall() {
+        return exampleOnCall(start, end);
+    }
+
+    private static ScheduleEntry exampleOnCall(final ZonedDateTime from, final ZonedDateTime to) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room("1"));
+    }
+}
@@ -0,0 +1,210 @@
+package io.github.mat3e.schedule.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("unit")
+class ClinicCommandExecutorTest {
+    private static final ZonedDateTime start = ZonedDateTime.now();
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    private final InMemoryScheduleRepository repository = new InMemoryScheduleRepository();
+    private final List<Runnable> tasks = new ArrayList<>();
+    private final Executor manualExecutor = tasks::add;
+
+    @Test
+    @DisplayName("should run commands of a clinic one after another and save them together")
+    void scheduleOnCall_worksAsExpected() {
+        // given
+        var clinicId = exampleClinic();
+        var toTest = new ClinicCommandExecutor(repository, manualExecutor);
+
+        // when
+        var first = toTest.scheduleOnCall(clinicId, exampleOnCall(start, end));
+        var second = toTest.scheduleOnCall(clinicId, exampleOnCall(start.plusHours(1), end));
+        var third = toTest.erase(clinicId, end, end.plusHours(1));
+        runTasks();
+
+        // then
+        var stored = repository.findBy(clinicId).orElseThrow();
+        assertAll(
+                () -> assertSame(ScheduleOutcome.Accepted.INSTANCE, first.join()),
+                () -> assertEquals(new ScheduleOutcome.Rejection.DateAlreadyTaken(exampleOnCall(start, end)), second.join()),
+                () -> assertSame(ScheduleOutcome.Rejection.NothingToErase.INSTANCE, third.join()),
+                () -> assertEquals(2, stored.getVersion()),
+                () -> assertEquals(Set.of(exampleOnCall(start, end)), stored.getSchedule().getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should reject commands which don't fit the clinic's mailbox")
+    void scheduleOnCall_appliesBackpressure() {
+        // given
+        var clinicId = exampleClinic();
+        var toTest = new ClinicCommandExecutor(repository, manualExecutor, 1);
+
+        // when
+        var accepted = toTest.scheduleOnCall(clinicId, exampleOnCall(start, end));
+        var rejected = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end.plusHours(1)));
+        var otherClinic = toTest.scheduleOnCall(exampleClinic(), exampleOnCall(start, end));
+        runTasks();
+        var afterDrain = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end.plusHours(1)));
+        runTasks();
+
+        // then
+        var e = assertThrows(ExecutionException.class, rejected::get);
+        assertAll(
+                () -> assertTrue(e.getCause() instanceof RejectedExecutionException),
+                () -> assertTrue(accepted.join().isAccepted()),
+                () -> assertTrue(otherClinic.join().isAccepted()),
+                () -> assertTrue(afterDrain.join().isAccepted())
+        );
+    }
+
+    @Test
+    @DisplayName("should fail commands of an unknown clinic")
+    void scheduleOnCall_failsForUnknownClinic() {
+        // given
+        var toTest = new ClinicCommandExecutor(repository, manualExecutor);
+
+        // when
+        var result = toTest.scheduleOnCall(UUID.randomUUID(), exampleOnCall(start, end));
+        runTasks();
+
+        // then
+        var e = assertThrows(ExecutionException.class, result::get);
+        assertTrue(e.getCause() instanceof IllegalArgumentException);
+    }
+
+    @Test
+    @DisplayName("should fail all the commands saved together and load the schedule again when saving fails")
+    void scheduleOnCall_reloadsAfterConflict() {
+        // given
+        var clinicId = exampleClinic();
+        var stored = repository.findBy(clinicId).orElseThrow();
+        stored.getSchedule().scheduleOnCall(exampleOnCall(start, end));
+        repository.save(stored.getSchedule(), stored.getVersion());
+        // and
+        var failingOnce = new ScheduleRepository() {
+            boolean failed;
+
+            @Override
+            public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+                return repository.findBy(clinicId);
+            }
+
+            @Override
+            public long save(final Schedule schedule, final long expectedVersion) {
+                if (!failed) {
+                    failed = true;
+                    throw new ScheduleVersionConflictException(schedule.getClinicId(), expectedVersion);
+                }
+                return repository.save(schedule, expectedVersion);
+            }
+        };
+        var toTest = new ClinicCommandExecutor(failingOnce, manualExecutor);
+
+        // when
+        var conflicting = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end.plusHours(1)));
+        var alsoFailed = toTest.scheduleOnCall(clinicId, exampleOnCall(start, end));
+        runTasks();
+        var retried = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end.plusHours(1)));
+        runTasks();
+
+        // then
+        var cause = assertThrows(ExecutionException.class, conflicting::get).getCause();
+        assertAll(
+                () -> assertTrue(cause instanceof ScheduleVersionConflictException),
+                () -> assertSame(cause, assertThrows(ExecutionException.class, alsoFailed::get).getCause()),
+                () -> assertTrue(retried.join().isAccepted()),
+                () -> assertEquals(2, repository.findBy(clinicId).orElseThrow().getSchedule().getSnapshot().getEntries().size())
+        );
+    }
+
+    @Test
+    @DisplayName("should drop the mailboxes of clinics with no commands left")
+    void scheduleOnCall_dropsIdleMailboxes() {
+        // given
+        var clinicId = exampleClinic();
+        var toTest = new ClinicCommandExecutor(repository, manualExecutor);
+
+        // when
+        var first = toTest.scheduleOnCall(clinicId, exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleClinic(), exampleOnCall(start, end));
+        int beforeDrain = toTest.mailboxCount();
+        runTasks();
+        var second = toTest.scheduleOnCall(clinicId, exampleOnCall(end, end.plusHours(1)));
+        runTasks();
+
+        // then
+        assertAll(
+                () -> assertEquals(2, beforeDrain),
+                () -> assertEquals(0, toTest.mailboxCount()),
+                () -> assertTrue(first.join().isAccepted()),
+                () -> assertTrue(second.join().isAccepted()),
+                () -> assertEquals(3, repository.findBy(clinicId).orElseThrow().getVersion())
+        );
+    }
+
+    @Test
+    @DisplayName("should run commands of many clinics in parallel")
+    void scheduleOnCall_worksConcurrently() {
+        // given
+        var pool = Executors.newFixedThreadPool(4);
+        var toTest = new ClinicCommandExecutor(repository, pool);
+        List<UUID> clinics = List.of(exampleClinic(), exampleClinic(), exampleClinic());
+        List<CompletableFuture<ScheduleOutcome>> results = new ArrayList<>();
+
+        // when
+        for (int i = 0; i < 100; i++) {
+            for (UUID clinicId : clinics) {
+                results.add(toTest.scheduleOnCall(clinicId, exampleOnCall(start.plusHours(i), start.plusHours(i + 1))));
+            }
+        }
+        CompletableFuture.allOf(results.toArray(CompletableFuture[]::new)).join();
+        pool.shutdown();
+
+        // then
+        assertAll(
+                () -> assertFalse(results.stream().anyMatch(result -> !result.join().isAccepted())),
+                () -> assertTrue(clinics.stream().allMatch(clinicId ->
+                        repository.findBy(clinicId).orElseThrow().getSchedule().getSnapshot().getEntries().size() == 100))
+        );
+    }
+
+    private UUID exampleClinic() {
+        var schedule = new Schedule(UUID.randomUUID(), List.of(new Room("1")));
+        repository.save(schedule, ScheduleRepository.NO_VERSION);
+        return schedule.getClinicId();
+    }
+
+    private void runTasks() {
+        while (!tasks.isEmpty()) {
+            tasks.remove(0).run();
+        }
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room("1"));
+    }
+}
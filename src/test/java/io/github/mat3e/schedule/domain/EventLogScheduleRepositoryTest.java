@@ -0,0 +1,263 @@
+package io.github.mat3e.schedule.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.time.Period;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("unit")
+class EventLogScheduleRepositoryTest {
+    private static final ZonedDateTime start = ZonedDateTime.now();
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    private final ScheduleFactory scheduleFactory = new ScheduleFactory(() -> List.of(new Room("1"), new Room("2")));
+
+    @TempDir
+    Path directory;
+
+    @Test
+    @DisplayName("should replay saved changes")
+    void findBy_replaysChanges() {
+        // given
+        var schedule = scheduleFactory.create();
+        schedule.scheduleOnCall(exampleOnCall(start, end, "1"));
+        long version = new EventLogScheduleRepository(directory, scheduleFactory).save(schedule, ScheduleRepository.NO_VERSION);
+        schedule.scheduleVisit(exampleVisit(start, start.plusHours(1), "1"));
+        schedule.scheduleOnCall(exampleOnCall(start, end, "2"));
+        version = new EventLogScheduleRepository(directory, scheduleFactory).save(schedule, version);
+
+        // when
+        var result = new EventLogScheduleRepository(directory, scheduleFactory).findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(2, result.getVersion()),
+                () -> assertEquals(schedule.getSnapshot(), result.getSchedule().getSnapshot())
+        );
+    }
+
+    @Test
+    @DisplayName("should replay saves logged after the checkpoint")
+    void findBy_usesCheckpoint() {
+        // given
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory, 2);
+        var schedule = scheduleFactory.create();
+        long version = ScheduleRepository.NO_VERSION;
+        for (int i = 0; i < 5; i++) {
+            schedule.scheduleOnCall(exampleOnCall(start.plusDays(i), end.plusDays(i), "1"));
+            version = toTest.save(schedule, version);
+        }
+
+        // when
+        var result = new EventLogScheduleRepository(directory, scheduleFactory, 2).findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertTrue(Files.exists(directory.resolve(schedule.getClinicId() + ".checkpoint"))),
+                () -> assertEquals(5, result.getVersion()),
+                () -> assertEquals(schedule.getSnapshot(), result.getSchedule().getSnapshot())
+        );
+    }
+
+    @Test
+    @DisplayName("should save the whole state of a schedule saved for the first time")
+    void save_storesRestoredSchedule() {
+        // given
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory);
+        var restored = scheduleFactory.restore(new ScheduleSnapshot(
+                UUID.randomUUID(),
+                Set.of(exampleOnCall(start, end, "1"), exampleVisit(start, start.plusHours(1), "2"))
+        ));
+
+        // when
+        long version = toTest.save(restored, ScheduleRepository.NO_VERSION);
+        var result = new EventLogScheduleRepository(directory, scheduleFactory).findBy(restored.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(1, version),
+                () -> assertEquals(1, result.getVersion()),
+                () -> assertEquals(restored.getSnapshot(), result.getSchedule().getSnapshot())
+        );
+    }
+
+    @Test
+    @DisplayName("should replay recurring on calls, in the log and in the checkpoint")
+    void findBy_replaysRecurringOnCalls() {
+        // given
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory, 2);
+        var schedule = scheduleFactory.create();
+        schedule.scheduleRecurringOnCall(new RecurringOnCall(
+                new Doctor(Specialization.SURGEON), start, end, new Room("1"), Period.ofWeeks(1), start.plusWeeks(10)));
+        long version = toTest.save(schedule, ScheduleRepository.NO_VERSION);
+        schedule.scheduleVisit(exampleVisit(start.plusWeeks(1), start.plusWeeks(1).plusHours(1), "1"));
+        version = toTest.save(schedule, version);
+        schedule.erase(start.plusWeeks(2), end.plusWeeks(2));
+        toTest.save(schedule, version);
+
+        // when
+        var result = new EventLogScheduleRepository(directory, scheduleFactory, 2).findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(3, result.getVersion()),
+                () -> assertEquals(schedule.getSnapshot(), result.getSchedule().getSnapshot())
+        );
+    }
+
+    @Test
+    @DisplayName("should reject saving an outdated version")
+    void save_throwsWhenVersionOutdated() {
+        // given
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory);
+        var schedule = scheduleFactory.create();
+        toTest.save(schedule, ScheduleRepository.NO_VERSION);
+        var first = toTest.findBy(schedule.getClinicId()).orElseThrow();
+        var second = toTest.findBy(schedule.getClinicId()).orElseThrow();
+        toTest.save(first.getSchedule(), first.getVersion());
+
+        // expect
+        assertThrows(
+                ScheduleVersionConflictException.class,
+                () -> toTest.save(second.getSchedule(), second.getVersion())
+        );
+    }
+
+    @Test
+    @DisplayName("should ignore a save interrupted in the middle")
+    void findBy_ignoresTornRecord() throws IOException {
+        // given
+        var schedule = scheduleFactory.create();
+        schedule.scheduleOnCall(exampleOnCall(start, end, "1"));
+        new EventLogScheduleRepository(directory, scheduleFactory).save(schedule, ScheduleRepository.NO_VERSION);
+        Files.write(directory.resolve(schedule.getClinicId() + ".log"), new byte[]{0, 0, 1, 0, 42}, StandardOpenOption.APPEND);
+
+        // when
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory);
+        var result = toTest.findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(1, result.getVersion()),
+                () -> assertEquals(schedule.getSnapshot(), result.getSchedule().getSnapshot()),
+                () -> assertEquals(2, toTest.save(result.getSchedule(), result.getVersion()))
+        );
+    }
+
+    @Test
+    @DisplayName("should keep the saves made after a save which failed in the middle")
+    void save_dropsTornRecord() {
+        // given
+        var channels = new ArrayList<FailingFileChannel>();
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory) {
+            @Override
+            FileChannel openLog(final Path logFile) throws IOException {
+                var channel = new FailingFileChannel(super.openLog(logFile));
+                channels.add(channel);
+                return channel;
+            }
+        };
+        var schedule = scheduleFactory.create();
+        long version = toTest.save(schedule, ScheduleRepository.NO_VERSION);
+        schedule.scheduleOnCall(exampleOnCall(start, end, "1"));
+        // and
+        channels.forEach(FailingFileChannel::failNextWrite);
+        assertThrows(UncheckedIOException.class, () -> toTest.save(schedule, version));
+
+        // when
+        schedule.scheduleOnCall(exampleOnCall(start, end, "2"));
+        long savedVersion = toTest.save(schedule, version);
+        var result = new EventLogScheduleRepository(directory, scheduleFactory).findBy(schedule.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(2, savedVersion),
+                () -> assertEquals(2, result.getVersion()),
+                () -> assertEquals(schedule.getSnapshot(), result.getSchedule().getSnapshot())
+        );
+    }
+
+    @Test
+    @DisplayName("should keep just the most recently used logs open and open the others again when needed")
+    void save_closesLeastRecentlyUsedLogs() {
+        // given
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory, 1_000, 1);
+        var first = scheduleFactory.create();
+        var second = scheduleFactory.create();
+        long firstVersion = toTest.save(first, ScheduleRepository.NO_VERSION);
+        toTest.save(second, ScheduleRepository.NO_VERSION);
+
+        // when
+        int openAfterBoth = toTest.openLogCount();
+        first.scheduleOnCall(exampleOnCall(start, end, "1"));
+        long savedVersion = toTest.save(first, firstVersion);
+        var result = toTest.findBy(first.getClinicId()).orElseThrow();
+
+        // then
+        assertAll(
+                () -> assertEquals(1, openAfterBoth),
+                () -> assertEquals(1, toTest.openLogCount()),
+                () -> assertEquals(2, savedVersion),
+                () -> assertEquals(2, result.getVersion()),
+                () -> assertEquals(first.getSnapshot(), result.getSchedule().getSnapshot())
+        );
+    }
+
+    @Test
+    @DisplayName("should list the most recently changed clinics first")
+    void findMostRecentlyChanged_worksAsExpected() throws IOException {
+        // given
+        var toTest = new EventLogScheduleRepository(directory, scheduleFactory);
+        var oldest = scheduleFactory.create();
+        var newest = scheduleFactory.create();
+        var middle = scheduleFactory.create();
+        for (Schedule schedule : List.of(oldest, newest, middle)) {
+            schedule.scheduleOnCall(exampleOnCall(start, end, "1"));
+            toTest.save(schedule, ScheduleRepository.NO_VERSION);
+        }
+        touch(oldest, Instant.parse("2020-01-01T00:00:00Z"));
+        touch(middle, Instant.parse("2020-01-02T00:00:00Z"));
+        touch(newest, Instant.parse("2020-01-03T00:00:00Z"));
+        Files.createFile(directory.resolve("notes.log"));
+
+        // when
+        var result = toTest.findMostRecentlyChanged(2);
+
+        // then
+        assertEquals(List.of(newest.getClinicId(), middle.getClinicId()), result);
+    }
+
+    private void touch(Schedule schedule, Instant time) throws IOException {
+        for (String extension : List.of(".log", ".checkpoint")) {
+            Files.setLastModifiedTime(directory.resolve(schedule.getClinicId() + extension), FileTime.from(time));
+        }
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to, String room) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room));
+    }
+
+    private static ScheduleEntry exampleVisit(ZonedDateTime from, ZonedDateTime to, String room) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room), new Patient("patient"));
+    }
+}
@@ -0,0 +1,86 @@
+package io.github.mat3e.schedule.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("unit")
+class InMemoryScheduleRepositoryTest {
+    private static final ZonedDateTime start = ZonedDateTime.now();
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    private final InMemoryScheduleRepository toTest = new InMemoryScheduleRepository();
+
+    @Test
+    @DisplayName("should find saved schedule with the next version")
+    void save_worksAsExpected() {
+        // given
+        var schedule = new Schedule(List.of(new Room("1")));
+        schedule.scheduleOnCall(exampleOnCall());
+
+        // when
+        long version = toTest.save(schedule, ScheduleRepository.NO_VERSION);
+
+        // then
+        var result = toTest.findBy(schedule.getClinicId()).orElseThrow();
+        assertAll(
+                () -> assertEquals(1, version),
+                () -> assertEquals(version, result.getVersion()),
+                () -> assertEquals(Set.of(exampleOnCall()), result.getSchedule().getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should not expose changes until saved")
+    void findBy_returnsCopy() {
+        // given
+        var schedule = new Schedule(List.of(new Room("1")));
+        toTest.save(schedule, ScheduleRepository.NO_VERSION);
+
+        // when
+        schedule.scheduleOnCall(exampleOnCall());
+        toTest.findBy(schedule.getClinicId()).orElseThrow().getSchedule().scheduleOnCall(exampleOnCall());
+
+        // then
+        assertTrue(toTest.findBy(schedule.getClinicId()).orElseThrow().getSchedule().getSnapshot().getEntries().isEmpty());
+    }
+
+    @Test
+    @DisplayName("should reject saving an outdated version")
+    void save_throwsWhenVersionOutdated() {
+        // given
+        var clinicId = UUID.randomUUID();
+        toTest.save(new Schedule(clinicId, List.of(new Room("1"))), ScheduleRepository.NO_VERSION);
+        var first = toTest.findBy(clinicId).orElseThrow();
+        var second = toTest.findBy(clinicId).orElseThrow();
+        first.getSchedule().scheduleOnCall(exampleOnCall());
+        toTest.save(first.getSchedule(), first.getVersion());
+
+        // expect
+        assertAll(
+                () -> assertThrows(
+                        ScheduleVersionConflictException.class,
+                        () -> toTest.save(second.getSchedule(), second.getVersion())
+                ),
+                () -> assertThrows(
+                        ScheduleVersionConflictException.class,
+                        () -> toTest.save(new Schedule(clinicId, List.of()), ScheduleRepository.NO_VERSION)
+                ),
+                () -> assertEquals(2, toTest.findBy(clinicId).orElseThrow().getVersion())
+        );
+    }
+
+    private static ScheduleEntry exampleOnCall() {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), start, end, new Room("1"));
+    }
+}
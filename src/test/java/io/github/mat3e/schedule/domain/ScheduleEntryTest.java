@@ -11,11 +11,13 @@ import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.time.ZonedDateTime;
+import java.util.Set;
 import java.util.function.Supplier;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
@@ -154,6 +156,59 @@ class ScheduleEntryTest {
         );
     }
 
+    @Test
+    @DisplayName("should immerse a visit into on calls following each other")
+    void immerseInto_onCallsWithoutGaps() {
+        // given
+        var visit = new ScheduleEntry(exampleSurgeon(), start.plusHours(1), start.plusMinutes(150), new Room("foo"), new Patient("p"));
+        var onCalls = Set.of(exampleEntry(start, end), exampleEntry(end, end.plusHours(2)));
+
+        // when
+        Set<ScheduleEntry> result = visit.immerseInto$schedule(onCalls);
+
+        // then
+        assertEquals(
+                Set.of(exampleEntry(start, start.plusHours(1)), visit, exampleEntry(start.plusMinutes(150), end.plusHours(2))),
+                result
+        );
+    }
+
+    @Test
+    @DisplayName("should NOT immerse a visit into on calls with a gap in between")
+    void immerseInto_onCallsWithGap() {
+        // given
+        var visit = new ScheduleEntry(exampleSurgeon(), start.plusHours(1), start.plusMinutes(150), new Room("foo"), new Patient("p"));
+        var onCalls = Set.of(exampleEntry(start, end), exampleEntry(end.plusMinutes(1), end.plusHours(2)));
+
+        // when
+        Set<ScheduleEntry> result = visit.immerseInto$schedule(onCalls);
+
+        // then
+        assertEquals(onCalls, result);
+    }
+
+    @Test
+    @DisplayName("should throw when immersing a visit into no on calls")
+    void immerseInto_noOnCalls() {
+        // given
+        var visit = new ScheduleEntry(exampleSurgeon(), start.plusHours(1), start.plusMinutes(150), new Room("foo"), new Patient("p"));
+
+        // expect
+        assertThrows(IllegalArgumentException.class, () -> visit.immerseInto$schedule(Set.of()));
+    }
+
+    @Test
+    @DisplayName("should trim the end overlapping with other")
+    void trimTo_otherOverlappingEnd() {
+        assertEquals(exampleEntry(start, start.plusHours(1)), entry.trimTo$schedule(exampleEntry(start.plusHours(1), end.plusHours(1))));
+    }
+
+    @Test
+    @DisplayName("should trim nothing left when other covers the whole entry")
+    void trimTo_otherCoveringEntry() {
+        assertNull(entry.trimTo$schedule(exampleEntry(start.minusHours(1), end.plusHours(1))));
+    }
+
     private static ScheduleEntry exampleEntry(ZonedDateTime from, ZonedDateTime to) {
         return new ScheduleEntry(
                 exampleSurgeon(),
@@ -0,0 +1,88 @@
+package io.github.mat3e.schedule.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("unit")
+class ScheduleFactoryTest {
+    private static final ZonedDateTime start = ZonedDateTime.now();
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    private final ScheduleFactory toTest = new ScheduleFactory(() -> List.of(new Room("1"), new Room("2")));
+
+    @Test
+    @DisplayName("should restore on calls and visits")
+    void restore_worksAsExpected() {
+        // given
+        var snapshot = new ScheduleSnapshot(UUID.randomUUID(), Set.of(
+                exampleOnCall(start, end, "1"),
+                exampleVisit(end, end.plusHours(1), "1"),
+                exampleOnCall(start, end, "2")
+        ));
+
+        // when
+        var result = toTest.restore(snapshot);
+
+        // then
+        assertEquals(snapshot, result.getSnapshot());
+    }
+
+    @Test
+    @DisplayName("should restore indexes together with entries")
+    void restore_keepsScheduleConsistent() {
+        // given
+        var result = toTest.restore(new ScheduleSnapshot(UUID.randomUUID(), Set.of(exampleOnCall(start, end, "1"))));
+
+        // expect
+        assertThrows(
+                RoomAlreadyTakenException.class,
+                () -> result.scheduleOnCall(exampleOnCall(start.plusHours(1), end, "1"))
+        );
+    }
+
+    @Test
+    @DisplayName("should throw when restoring overlapping entries")
+    void restore_throwsWhenEntriesOverlap() {
+        // given
+        var snapshot = new ScheduleSnapshot(UUID.randomUUID(), Set.of(
+                exampleOnCall(start, end, "1"),
+                exampleVisit(start.plusHours(1), end.plusHours(1), "1")
+        ));
+
+        // expect
+        assertThrows(IllegalArgumentException.class, () -> toTest.restore(snapshot));
+        assertDoesNotThrow(() -> toTest.restoreTrusted(snapshot));
+    }
+
+    @Test
+    @DisplayName("should throw when restoring an entry starting right at an entry with no length")
+    void restore_throwsWhenEntriesOverlapEntryWithNoLength() {
+        // given
+        var snapshot = new ScheduleSnapshot(UUID.randomUUID(), Set.of(
+                exampleOnCall(start.minusHours(1), start, "1"),
+                exampleOnCall(start, start, "1"),
+                exampleVisit(start, end, "1")
+        ));
+
+        // expect
+        assertThrows(IllegalArgumentException.class, () -> toTest.restore(snapshot));
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to, String room) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room));
+    }
+
+    private static ScheduleEntry exampleVisit(ZonedDateTime from, ZonedDateTime to, String room) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room), new Patient("patient"));
+    }
+}
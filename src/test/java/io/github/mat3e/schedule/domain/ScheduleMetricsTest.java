@@ -0,0 +1,91 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("unit")
+class ScheduleMetricsTest {
+    private static final ZonedDateTime start = ZonedDateTime.now();
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final ScheduleMetrics metrics = new ScheduleMetrics(registry);
+
+    @Test
+    @DisplayName("should time commands and count rejections by reason")
+    void recordCommand_worksAsExpected() {
+        // given
+        var toTest = new Schedule(UUID.randomUUID(), List.of(new Room("1")), metrics);
+
+        // when
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        assertThrows(DateAlreadyTakenException.class, () -> toTest.scheduleOnCall(exampleOnCall(start, end)));
+        assertThrows(NoPatientException.class, () -> toTest.scheduleVisit(exampleOnCall(start, end)));
+
+        // then
+        assertAll(
+                () -> assertEquals(1, registry.get("schedule.commands").tag("operation", "scheduleOnCall").tag("outcome", "accepted").timer().count()),
+                () -> assertEquals(1, registry.get("schedule.commands").tag("operation", "scheduleOnCall").tag("outcome", "rejected").timer().count()),
+                () -> assertEquals(1.0, registry.get("schedule.rejections").tag("reason", "DateAlreadyTaken").counter().count()),
+                () -> assertEquals(1.0, registry.get("schedule.rejections").tag("reason", "NoPatient").counter().count())
+        );
+    }
+
+    @Test
+    @DisplayName("should count every rejected entry of a batch")
+    void recordCommand_countsBatchRejections() {
+        // given
+        var toTest = new Schedule(UUID.randomUUID(), List.of(new Room("1")), metrics);
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // when
+        assertThrows(BatchRejectedException.class, () -> toTest.scheduleOnCalls(List.of(
+                exampleOnCall(start, end),
+                exampleOnCall(start.plusHours(1), end.plusHours(1)),
+                exampleOnCall(end, end.plusHours(1))
+        )));
+
+        // then
+        assertAll(
+                () -> assertEquals(1, registry.get("schedule.commands").tag("operation", "scheduleOnCalls").tag("outcome", "rejected").timer().count()),
+                () -> assertEquals(2.0, registry.get("schedule.rejections").tag("operation", "scheduleOnCalls").tag("reason", "DateAlreadyTaken").counter().count())
+        );
+    }
+
+    @Test
+    @DisplayName("should follow the size of the latest schedule of a clinic")
+    void observe_registersGaugesPerClinic() {
+        // given
+        var scheduleFactory = new ScheduleFactory(() -> List.of(new Room("1"), new Room("2")), metrics);
+        var toTest = scheduleFactory.create();
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        var copy = toTest.copy();
+
+        // when
+        copy.scheduleOnCall(exampleOnCall(end, end.plusHours(1)));
+
+        // then
+        String clinic = toTest.getClinicId().toString();
+        assertAll(
+                () -> assertEquals(1, registry.get("schedule.factory").tag("operation", "create").timer().count()),
+                () -> assertEquals(2.0, registry.get("schedule.entries").tag("clinic", clinic).gauge().value()),
+                () -> assertEquals(2.0, registry.get("schedule.index.largest").tag("clinic", clinic).tag("index", "room").gauge().value()),
+                () -> assertEquals(2.0, registry.get("schedule.index.largest").tag("clinic", clinic).tag("index", "doctor").gauge().value())
+        );
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room("1"));
+    }
+}
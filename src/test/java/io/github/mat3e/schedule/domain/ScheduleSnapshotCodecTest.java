@@ -0,0 +1,117 @@
+package io.github.mat3e.schedule.domain;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Set;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@Tag("unit")
+class ScheduleSnapshotCodecTest {
+    private static final ZonedDateTime start = ZonedDateTime.of(2020, 3, 29, 1, 30, 0, 500, ZoneId.of("Europe/Warsaw"));
+    private static final ZonedDateTime end = start.plusHours(2);
+
+    @Test
+    @DisplayName("should decode what was encoded")
+    void decode_returnsEncodedSnapshot() {
+        // given
+        var snapshot = new ScheduleSnapshot(UUID.randomUUID(), Set.of(
+                exampleOnCall(start, end, "1"),
+                exampleVisit(end, end.plusMinutes(30), "1", "patient"),
+                exampleVisit(start.minusYears(1), start.minusYears(1).plusHours(1), "2", "other patient"),
+                exampleOnCall(start.withZoneSameInstant(ZoneOffset.UTC), end, "2")
+        ));
+
+        // when
+        var result = ScheduleSnapshotCodec.decode(ScheduleSnapshotCodec.encode(snapshot));
+
+        // then
+        assertEquals(snapshot, result);
+    }
+
+    @Test
+    @DisplayName("should decode recurring on calls")
+    void decode_returnsRecurringOnCalls() {
+        // given
+        var snapshot = new ScheduleSnapshot(UUID.randomUUID(), Set.of(exampleOnCall(start, end, "1")), Set.of(
+                new RecurringOnCall(new Doctor(Specialization.SURGEON), end, end.plusHours(6), new Room("1"), Period.ofWeeks(1), end.plusYears(1)),
+                new RecurringOnCall(new Doctor(Specialization.SURGEON), start, end, new Room("2"), Period.ofDays(1), end.plusDays(10),
+                        Set.of(start.plusDays(2), start.plusDays(5)))
+        ));
+
+        // when
+        var result = ScheduleSnapshotCodec.decode(ScheduleSnapshotCodec.encode(snapshot));
+
+        // then
+        assertEquals(snapshot, result);
+    }
+
+    @Test
+    @DisplayName("should decode snapshots in the format without recurring on calls")
+    void decode_readsFirstFormatVersion() {
+        // given
+        var snapshot = new ScheduleSnapshot(UUID.randomUUID(), Set.of(exampleOnCall(start, end, "1")));
+        var buffer = ScheduleSnapshotCodec.encode(snapshot);
+        // the first version ends right after the entries, where the number of recurring on calls (0) is now
+        buffer.put(4, (byte) 1).limit(buffer.limit() - 1);
+
+        // when
+        var result = ScheduleSnapshotCodec.decode(buffer);
+
+        // then
+        assertAll(
+                () -> assertEquals(snapshot, result),
+                () -> assertFalse(buffer.hasRemaining())
+        );
+    }
+
+    @Test
+    @DisplayName("should decode from the position of the buffer")
+    void decode_movesBufferPosition() {
+        // given
+        var first = new ScheduleSnapshot(UUID.randomUUID(), Set.of(exampleOnCall(start, end, "1")));
+        var second = new ScheduleSnapshot(UUID.randomUUID(), Set.of());
+        var firstBytes = ScheduleSnapshotCodec.encode(first);
+        var buffer = ByteBuffer.allocate(firstBytes.remaining() + 100)
+                .put(firstBytes)
+                .put(ScheduleSnapshotCodec.encode(second))
+                .flip();
+
+        // expect
+        assertAll(
+                () -> assertEquals(first, ScheduleSnapshotCodec.decode(buffer)),
+                () -> assertEquals(second, ScheduleSnapshotCodec.decode(buffer)),
+                () -> assertFalse(buffer.hasRemaining())
+        );
+    }
+
+    @Test
+    @DisplayName("should throw when format is not supported")
+    void decode_throwsForUnknownFormat() {
+        // given
+        var buffer = ScheduleSnapshotCodec.encode(new ScheduleSnapshot(UUID.randomUUID(), Set.of()));
+        buffer.put(4, (byte) (ScheduleSnapshotCodec.FORMAT_VERSION + 1));
+
+        // expect
+        assertThrows(IllegalArgumentException.class, () -> ScheduleSnapshotCodec.decode(buffer));
+    }
+
+    private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to, String room) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room));
+    }
+
+    private static ScheduleEntry exampleVisit(ZonedDateTime from, ZonedDateTime to, String room, String patient) {
+        return new ScheduleEntry(new Doctor(Specialization.SURGEON), from, to, new Room(room), new Patient(patient));
+    }
+}
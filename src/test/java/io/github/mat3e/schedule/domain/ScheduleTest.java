@@ -11,9 +11,20 @@ import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
+import java.time.Duration;
+import java.time.Period;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
 
 import static java.util.Collections.emptySet;
@@ -23,7 +34,10 @@ import static org.junit.jupiter.api.Assertions.assertAll;
 import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.DynamicTest.dynamicTest;
 
 @Tag("unit")
@@ -98,6 +112,64 @@ class ScheduleTest {
         assertEquals("Cannot schedule for a room \"1\"", e.getMessage());
     }
 
+    @Test
+    @DisplayName("should schedule on calls right after each other and in other rooms")
+    void scheduleOnCall_worksForAdjacentDatesAndOtherRooms() {
+        // given
+        var room1 = new Room("1");
+        var room2 = new Room("2");
+        // and
+        toTest = new Schedule(Set.of(room1, room2));
+
+        // expect
+        assertAll(
+                () -> assertDoesNotThrow(() -> toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, room1))),
+                () -> assertDoesNotThrow(() -> toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), end, end.plusHours(2), room1))),
+                () -> assertDoesNotThrow(() -> toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start.minusHours(2), start, room1))),
+                () -> assertDoesNotThrow(() -> toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, room2))),
+                () -> assertThrows(
+                        RoomAlreadyTakenException.class,
+                        () -> toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), end.minusMinutes(1), end.plusMinutes(1), room1))
+                )
+        );
+    }
+
+    @Test
+    @DisplayName("should accept just one of the concurrent on calls for the same date")
+    void scheduleOnCall_worksConcurrently() throws Exception {
+        // given
+        var rooms = Set.of(new Room("1"), new Room("2"));
+        toTest = new Schedule(rooms);
+        // and
+        var executor = Executors.newFixedThreadPool(4);
+        var startSignal = new CountDownLatch(1);
+
+        // when
+        List<Future<Boolean>> results = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            var room = i % 2 == 0 ? "1" : "2";
+            results.add(executor.submit(() -> {
+                startSignal.await();
+                try {
+                    toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, new Room(room)));
+                    return true;
+                } catch (BusinessScheduleException e) {
+                    return false;
+                }
+            }));
+        }
+        startSignal.countDown();
+        int accepted = 0;
+        for (Future<Boolean> result : results) {
+            accepted += result.get() ? 1 : 0;
+        }
+        executor.shutdown();
+
+        // then
+        assertEquals(2, accepted);
+        assertEquals(2, toTest.getSnapshot().getEntries().size());
+    }
+
     @Test
     @DisplayName("should throw when scheduling on call with patient")
     void scheduleOnCall_throwsWhenPatient() {
@@ -264,6 +336,295 @@ class ScheduleTest {
         );
     }
 
+    @Test
+    @DisplayName("should schedule a visit within on calls split by a previous visit")
+    void scheduleNewVisit_worksForSplitOnCalls() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        // and
+        toTest.scheduleVisit(exampleVisit(start.plusHours(1), end.plusHours(1)));
+
+        // when
+        toTest.scheduleVisit(new ScheduleEntry(exampleSurgeon(), end.plusHours(1), end.plusHours(2), exampleRoom(), new Patient("other")));
+
+        // then
+        assertArrayEquals(
+                new ScheduleEntry[]{
+                        exampleOnCall(start, start.plusHours(1)),
+                        exampleVisit(start.plusHours(1), end.plusHours(1)),
+                        new ScheduleEntry(exampleSurgeon(), end.plusHours(1), end.plusHours(2), exampleRoom(), new Patient("other"))
+                },
+                toTest.getSnapshot().getEntries().stream()
+                        .sorted(comparing(ScheduleEntry::getFrom))
+                        .toArray()
+        );
+    }
+
+    @Test
+    @DisplayName("should schedule a batch of on calls and visits")
+    void scheduleBatch_worksAsExpected() {
+        // when
+        toTest.scheduleOnCalls(List.of(
+                exampleOnCall(end, end.plusHours(2)),
+                exampleOnCall(start, end)
+        ));
+        // and
+        toTest.scheduleVisits(List.of(
+                exampleVisit(start, start.plusHours(1)),
+                exampleVisit(end.plusHours(1), end.plusHours(2))
+        ));
+
+        // then
+        assertEquals(
+                Set.of(
+                        exampleVisit(start, start.plusHours(1)),
+                        exampleOnCall(start.plusHours(1), end),
+                        exampleOnCall(end, end.plusHours(1)),
+                        exampleVisit(end.plusHours(1), end.plusHours(2))
+                ),
+                toTest.getSnapshot().getEntries()
+        );
+    }
+
+    @Test
+    @DisplayName("should reject a whole batch and report every conflicting entry")
+    void scheduleBatch_throwsWithAllConflicts() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        // and
+        var conflictingWithExisting = exampleOnCall(start.plusHours(1), end.plusHours(1));
+        var conflictingWithBatch = exampleOnCall(end.plusHours(3), end.plusHours(5));
+        var withPatient = exampleVisit(end.plusHours(6), end.plusHours(7));
+
+        // when
+        var e = assertThrows(
+                BatchRejectedException.class,
+                () -> toTest.scheduleOnCalls(List.of(
+                        conflictingWithExisting,
+                        exampleOnCall(end.plusHours(2), end.plusHours(4)),
+                        conflictingWithBatch,
+                        withPatient
+                ))
+        );
+
+        // then
+        assertAll(
+                () -> assertEquals(List.of(conflictingWithExisting, conflictingWithBatch, withPatient), List.copyOf(e.getRejections().keySet())),
+                () -> assertEquals(DateAlreadyTakenException.class, e.getRejections().get(conflictingWithExisting).getClass()),
+                () -> assertEquals(DateAlreadyTakenException.class, e.getRejections().get(conflictingWithBatch).getClass()),
+                () -> assertEquals(OnCallWithPatientException.class, e.getRejections().get(withPatient).getClass()),
+                () -> assertEquals(Set.of(exampleOnCall(start, end)), toTest.getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should reject a whole batch of visits")
+    void scheduleBatch_rollsBackVisits() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // when
+        var e = assertThrows(
+                BatchRejectedException.class,
+                () -> toTest.scheduleVisits(List.of(
+                        exampleVisit(start, start.plusHours(1)),
+                        exampleVisit(start.plusHours(1), end.plusHours(1))
+                ))
+        );
+
+        // then
+        assertAll(
+                () -> assertEquals(NoDoctorOnCallException.class, e.getRejections().get(exampleVisit(start.plusHours(1), end.plusHours(1))).getClass()),
+                () -> assertEquals(Set.of(exampleOnCall(start, end)), toTest.getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should import a whole roster into an empty schedule")
+    void importEntries_worksAsExpected() {
+        // given
+        var otherRoom = new Room("2");
+        toTest = new Schedule(List.of(exampleRoom(), otherRoom));
+        var roster = List.of(
+                exampleOnCall(end, end.plusHours(2)),
+                exampleVisit(start, start.plusHours(1)),
+                exampleOnCall(start.plusHours(1), end),
+                new ScheduleEntry(exampleSurgeon(), start.plusHours(1), end.plusHours(2), otherRoom)
+        );
+
+        // when
+        toTest.importEntries(roster, ForkJoinPool.commonPool());
+
+        // then
+        assertAll(
+                () -> assertEquals(Set.copyOf(roster), toTest.getSnapshot().getEntries()),
+                () -> assertEquals(4, toTest.getPendingChanges().getChanges().size()),
+                () -> assertEquals(
+                        List.of(exampleVisit(start, start.plusHours(1)), exampleOnCall(start.plusHours(1), end)),
+                        toTest.entriesFor(exampleRoom(), start, end).collect(toUnmodifiableList())
+                ),
+                () -> assertThrows(
+                        RoomAlreadyTakenException.class,
+                        () -> toTest.scheduleOnCall(exampleOnCall(start, end))
+                )
+        );
+    }
+
+    @Test
+    @DisplayName("should reject a whole roster and report every conflicting entry in the order of dates")
+    void importEntries_throwsWithAllConflicts() {
+        // given
+        var otherRoom = new Room("2");
+        toTest = new Schedule(List.of(exampleRoom(), otherRoom));
+        var onCallInOtherRoom = new ScheduleEntry(exampleSurgeon(), start, end, otherRoom);
+        var visitDuringOtherOnCall = exampleVisit(start.plusHours(1), end);
+        var overlappingOnCall = exampleOnCall(end.plusHours(1), end.plusHours(3));
+
+        // when
+        var e = assertThrows(
+                BatchRejectedException.class,
+                () -> toTest.importEntries(List.of(
+                        overlappingOnCall,
+                        exampleOnCall(end, end.plusHours(2)),
+                        visitDuringOtherOnCall,
+                        onCallInOtherRoom
+                ), ForkJoinPool.commonPool())
+        );
+
+        // then
+        assertAll(
+                () -> assertEquals(List.of(visitDuringOtherOnCall, overlappingOnCall), List.copyOf(e.getRejections().keySet())),
+                () -> assertEquals(RoomMismatchException.class, e.getRejections().get(visitDuringOtherOnCall).getClass()),
+                () -> assertEquals(RoomAlreadyTakenException.class, e.getRejections().get(overlappingOnCall).getClass()),
+                () -> assertEquals(Set.of(), toTest.getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should import just into an empty schedule")
+    void importEntries_throwsWhenScheduleNotEmpty() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // expect
+        assertThrows(
+                IllegalStateException.class,
+                () -> toTest.importEntries(List.of(exampleOnCall(end, end.plusHours(2))), ForkJoinPool.commonPool())
+        );
+    }
+
+    @Test
+    @DisplayName("should not change a snapshot taken before")
+    void getSnapshot_isNotAffectedByLaterChanges() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        var snapshot = toTest.getSnapshot();
+
+        // when
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        toTest.scheduleVisit(exampleVisit(start, start.plusHours(1)));
+
+        // then
+        assertEquals(Set.of(exampleOnCall(start, end)), snapshot.getEntries());
+    }
+
+    @Test
+    @DisplayName("should give the entries back as they were scheduled, whatever their zones and years")
+    void getSnapshot_keepsDatesAsScheduled() {
+        // given
+        var onCallFrom = start.withZoneSameInstant(ZoneId.of("Europe/Warsaw"));
+        var onCallTo = end.withZoneSameInstant(ZoneOffset.UTC);
+        var visitFrom = start.plusMinutes(30).withZoneSameInstant(ZoneId.of("Asia/Tokyo"));
+        var visitTo = start.plusHours(1);
+        var farFuture = ZonedDateTime.of(2500, 1, 1, 8, 0, 0, 0, ZoneId.of("Europe/Warsaw"));
+        var farPast = ZonedDateTime.of(1600, 1, 1, 8, 0, 0, 0, ZoneId.of("Europe/Warsaw"));
+
+        // when
+        toTest.scheduleOnCall(exampleOnCall(onCallFrom, onCallTo));
+        toTest.scheduleVisit(exampleVisit(visitFrom, visitTo));
+        toTest.scheduleOnCall(exampleOnCall(farFuture, farFuture.plusHours(2)));
+        toTest.scheduleOnCall(exampleOnCall(farPast, farPast.plusHours(2)));
+
+        // then
+        assertEquals(
+                Set.of(
+                        exampleOnCall(onCallFrom, visitFrom),
+                        exampleVisit(visitFrom, visitTo),
+                        exampleOnCall(visitTo, onCallTo),
+                        exampleOnCall(farFuture, farFuture.plusHours(2)),
+                        exampleOnCall(farPast, farPast.plusHours(2))
+                ),
+                toTest.getSnapshot().getEntries()
+        );
+    }
+
+    @Test
+    @DisplayName("should compare dates of the same instant in different zones the same way as the entries do")
+    void scheduleOnCall_comparesDatesAsEntriesDo() {
+        // given
+        var existing = exampleOnCall(start.withZoneSameInstant(ZoneOffset.UTC), end.withZoneSameInstant(ZoneOffset.UTC));
+        // same instant as the existing end, but later (or earlier) local time
+        var laterLocally = exampleOnCall(end.withZoneSameInstant(ZoneOffset.ofHours(1)), end.plusHours(1));
+        var earlierLocally = exampleOnCall(end.withZoneSameInstant(ZoneOffset.ofHours(-1)), end.plusHours(1));
+        var other = new Schedule(emptySet());
+        toTest.scheduleOnCall(existing);
+        other.scheduleOnCall(existing);
+
+        // when
+        var laterLocallyOutcome = toTest.tryScheduleOnCall(laterLocally);
+        var earlierLocallyOutcome = other.tryScheduleOnCall(earlierLocally);
+
+        // then
+        assertAll(
+                () -> assertFalse(existing.interferesWith(laterLocally)),
+                () -> assertTrue(laterLocallyOutcome.isAccepted()),
+                () -> assertTrue(existing.interferesWith(earlierLocally)),
+                () -> assertEquals(new ScheduleOutcome.Rejection.DateAlreadyTaken(existing), earlierLocallyOutcome)
+        );
+    }
+
+    @Test
+    @DisplayName("should not allow modifying a snapshot")
+    void getSnapshot_isImmutable() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // when
+        var entries = toTest.getSnapshot().getEntries();
+
+        // then
+        assertAll(
+                () -> assertThrows(UnsupportedOperationException.class, () -> entries.add(exampleOnCall(end, end.plusHours(1)))),
+                () -> assertThrows(UnsupportedOperationException.class, () -> entries.remove(exampleOnCall(start, end))),
+                () -> assertThrows(UnsupportedOperationException.class, entries::clear)
+        );
+    }
+
+    @Test
+    @DisplayName("should keep a single instance of each room, doctor and patient")
+    void scheduleNewVisit_sharesValues() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+
+        // when
+        toTest.scheduleVisit(exampleVisit(start, start.plusHours(1)));
+        toTest.scheduleVisit(exampleVisit(end, end.plusHours(1)));
+        // and
+        List<ScheduleEntry> result = toTest.getSnapshot().getEntries().stream()
+                .sorted(comparing(ScheduleEntry::getFrom))
+                .collect(toUnmodifiableList());
+
+        // then
+        assertAll(
+                () -> assertEquals(4, result.size()),
+                () -> result.forEach(entry -> assertSame(result.get(0).getRoom(), entry.getRoom())),
+                () -> result.forEach(entry -> assertSame(result.get(0).getDoctor(), entry.getDoctor())),
+                () -> assertSame(result.get(0).getPatient(), result.get(2).getPatient())
+        );
+    }
+
     @Test
     @DisplayName("should throw when erasing with wrong dates")
     void erase_throwsWhenWrongDates() {
@@ -308,6 +669,300 @@ class ScheduleTest {
         assertEquals(result.get(1), exampleVisit(end.plusHours(4), end.plusHours(5)));
     }
 
+    @Test
+    @DisplayName("should find free rooms")
+    void findFreeRooms_worksAsExpected() {
+        // given
+        var room2 = new Room("2");
+        toTest = new Schedule(Set.of(exampleRoom(), room2));
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // expect
+        assertAll(
+                () -> assertEquals(Set.of(room2), toTest.findFreeRooms(start.plusHours(1), end.plusHours(1))),
+                () -> assertEquals(Set.of(exampleRoom(), room2), toTest.findFreeRooms(end, end.plusHours(1)))
+        );
+    }
+
+    @Test
+    @DisplayName("should find the next free slot")
+    void findNextFreeSlot_worksAsExpected() {
+        // given
+        var room2 = new Room("2");
+        toTest = new Schedule(Set.of(exampleRoom(), room2));
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end.plusHours(1), end.plusHours(3)));
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start.minusHours(1), end.plusHours(5), room2));
+
+        // expect
+        assertAll(
+                () -> assertEquals(
+                        Optional.of(new FreeSlot(exampleRoom(), end, end.plusHours(1))),
+                        toTest.findNextFreeSlot(Duration.ofHours(1), start)
+                ),
+                () -> assertEquals(
+                        Optional.of(new FreeSlot(exampleRoom(), end.plusHours(3), end.plusHours(5))),
+                        toTest.findNextFreeSlot(Duration.ofHours(2), start)
+                ),
+                () -> assertEquals(Optional.empty(), new Schedule(emptySet()).findNextFreeSlot(Duration.ofHours(1), start))
+        );
+    }
+
+    @Test
+    @DisplayName("should find slots for visits within following on calls")
+    void findVisitSlots_worksAsExpected() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        toTest.scheduleVisit(exampleVisit(end.plusHours(1), end.plusHours(2)));
+        toTest.scheduleOnCall(exampleOnCall(end.plusHours(3), end.plusHours(4)));
+
+        // when
+        var result = toTest.findVisitSlots(exampleSurgeon(), Duration.ofHours(1), start.plusHours(1), end.plusHours(5));
+
+        // then
+        assertAll(
+                () -> assertEquals(List.of(
+                        new FreeSlot(exampleRoom(), start.plusHours(1), end.plusHours(1)),
+                        new FreeSlot(exampleRoom(), end.plusHours(3), end.plusHours(4))
+                ), result),
+                () -> assertDoesNotThrow(() -> toTest.scheduleVisit(exampleVisit(end, end.plusHours(1))))
+        );
+    }
+
+    @Test
+    @DisplayName("should evict entries which already ended")
+    void evictEndedBy_worksAsExpected() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        toTest.scheduleOnCall(exampleOnCall(end.plusHours(3), end.plusHours(5)));
+
+        // when
+        var result = toTest.evictEndedBy(end.plusHours(1));
+
+        // then
+        assertAll(
+                () -> assertEquals(Set.of(exampleOnCall(start, end)), result),
+                () -> assertEquals(
+                        Set.of(exampleOnCall(end, end.plusHours(2)), exampleOnCall(end.plusHours(3), end.plusHours(5))),
+                        toTest.getSnapshot().getEntries()
+                )
+        );
+    }
+
+    @Test
+    @DisplayName("should erase many windows at once")
+    void eraseWindows_worksAsExpected() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        toTest.scheduleOnCall(exampleOnCall(end.plusHours(3), end.plusHours(4)));
+
+        // when
+        toTest.erase(List.of(
+                new TimeWindow(end, end.plusHours(1)),
+                new TimeWindow(start.plusHours(1), end),
+                new TimeWindow(end.plusHours(2), end.plusHours(3)),
+                new TimeWindow(end.plusHours(2).plusMinutes(30), end.plusHours(5))
+        ));
+
+        // then
+        assertEquals(
+                Set.of(exampleOnCall(start, start.plusHours(1)), exampleOnCall(end.plusHours(1), end.plusHours(2))),
+                toTest.getSnapshot().getEntries()
+        );
+    }
+
+    @Test
+    @DisplayName("should erase many windows just in the given room")
+    void eraseWindows_filtersByRoom() {
+        // given
+        var otherRoom = new Room("2");
+        toTest = new Schedule(Set.of(exampleRoom(), otherRoom));
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start, end, otherRoom));
+
+        // when
+        toTest.erase(List.of(new TimeWindow(start.minusHours(1), end.plusHours(1))), otherRoom);
+
+        // then
+        assertAll(
+                () -> assertEquals(Set.of(exampleOnCall(start, end)), toTest.getSnapshot().getEntries()),
+                () -> assertThrows(
+                        NothingToEraseException.class,
+                        () -> toTest.erase(List.of(new TimeWindow(start, end)), otherRoom)
+                ),
+                () -> assertSame(
+                        ScheduleOutcome.Accepted.INSTANCE,
+                        toTest.tryErase(List.of(new TimeWindow(start, end)), exampleSurgeon())
+                )
+        );
+    }
+
+    @Test
+    @DisplayName("should stream entries within the dates in the order of their start dates")
+    void entriesBetween_worksAsExpected() {
+        // given
+        var otherRoom = new Room("2");
+        toTest = new Schedule(Set.of(exampleRoom(), otherRoom));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start.plusHours(1), end.plusHours(1), otherRoom));
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        toTest.scheduleOnCall(exampleOnCall(end.plusHours(3), end.plusHours(4)));
+
+        // when
+        var result = toTest.entriesBetween(start.plusHours(1), end.plusHours(1));
+        toTest.erase(start.minusHours(1), end.plusHours(5));
+
+        // then
+        assertAll(
+                () -> assertEquals(List.of(
+                        exampleOnCall(start, end),
+                        new ScheduleEntry(exampleSurgeon(), start.plusHours(1), end.plusHours(1), otherRoom),
+                        exampleOnCall(end, end.plusHours(2))
+                ), result.collect(toUnmodifiableList())),
+                () -> assertEquals(0, toTest.entriesBetween(start, end.plusHours(5)).count())
+        );
+    }
+
+    @Test
+    @DisplayName("should stream entries of a room or a doctor in the order of their start dates")
+    void entriesFor_worksAsExpected() {
+        // given
+        var otherRoom = new Room("2");
+        toTest = new Schedule(Set.of(exampleRoom(), otherRoom));
+        toTest.scheduleOnCall(exampleOnCall(end, end.plusHours(2)));
+        toTest.scheduleOnCall(new ScheduleEntry(exampleSurgeon(), start.plusHours(1), end.plusHours(1), otherRoom));
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // expect
+        assertAll(
+                () -> assertEquals(
+                        List.of(exampleOnCall(start, end), exampleOnCall(end, end.plusHours(2))),
+                        toTest.entriesFor(exampleRoom(), start, end.plusHours(2)).collect(toUnmodifiableList())
+                ),
+                () -> assertEquals(
+                        List.of(exampleOnCall(start, end), new ScheduleEntry(exampleSurgeon(), start.plusHours(1), end.plusHours(1), otherRoom)),
+                        toTest.entriesFor(exampleSurgeon(), start, start.plusHours(2)).collect(toUnmodifiableList())
+                ),
+                () -> assertEquals(0, toTest.entriesFor(new Room("3"), start, end).count())
+        );
+    }
+
+    @Test
+    @DisplayName("should report rejections with the conflicting entry instead of throwing")
+    void tryScheduleOnCall_returnsRejection() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+
+        // when
+        var accepted = toTest.tryScheduleOnCall(exampleOnCall(end, end.plusHours(1)));
+        var rejected = toTest.tryScheduleOnCall(exampleOnCall(start.plusHours(1), end));
+
+        // then
+        assertAll(
+                () -> assertSame(ScheduleOutcome.Accepted.INSTANCE, accepted),
+                () -> assertEquals(new ScheduleOutcome.Rejection.DateAlreadyTaken(exampleOnCall(start, end)), rejected),
+                () -> assertEquals(Set.of(exampleOnCall(start, end), exampleOnCall(end, end.plusHours(1))), toTest.getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should report the same rejection instance when there is nothing conflicting")
+    void tryCommands_returnSingletonRejections() {
+        assertAll(
+                () -> assertSame(ScheduleOutcome.Rejection.OnCallWithPatient.INSTANCE, toTest.tryScheduleOnCall(exampleVisit(start, end))),
+                () -> assertSame(ScheduleOutcome.Rejection.NoPatient.INSTANCE, toTest.tryScheduleVisit(exampleOnCall(start, end))),
+                () -> assertSame(ScheduleOutcome.Rejection.NoDoctorOnCall.INSTANCE, toTest.tryScheduleVisit(exampleVisit(start, end))),
+                () -> assertSame(ScheduleOutcome.Rejection.NothingToErase.INSTANCE, toTest.tryErase(start, end))
+        );
+    }
+
+    @Test
+    @DisplayName("should report every rejected entry of a batch")
+    void tryScheduleOnCalls_returnsBatchRejection() {
+        // given
+        toTest.scheduleOnCall(exampleOnCall(start, end));
+        var conflicting = exampleOnCall(start.plusHours(1), end.plusHours(1));
+
+        // when
+        var result = toTest.tryScheduleOnCalls(List.of(conflicting, exampleOnCall(end.plusHours(2), end.plusHours(3))));
+
+        // then
+        assertAll(
+                () -> assertEquals(
+                        new ScheduleOutcome.Rejection.BatchRejected(Map.of(conflicting, new ScheduleOutcome.Rejection.DateAlreadyTaken(exampleOnCall(start, end)))),
+                        result
+                ),
+                () -> assertEquals(Set.of(exampleOnCall(start, end)), toTest.getSnapshot().getEntries())
+        );
+    }
+
+    @Test
+    @DisplayName("should keep a recurring on call as a single rule and compute its occurrences")
+    void scheduleRecurringOnCall_worksAsExpected() {
+        // given
+        var weekly = exampleWeeklyOnCall();
+
+        // when
+        toTest.scheduleRecurringOnCall(weekly);
+
+        // then
+        assertAll(
+                () -> assertEquals(Set.of(), toTest.getSnapshot().getEntries()),
+                () -> assertEquals(Set.of(weekly), toTest.getSnapshot().getRecurringOnCalls()),
+                () -> assertEquals(
+                        List.of(exampleOnCall(start.plusWeeks(1), end.plusWeeks(1)), exampleOnCall(start.plusWeeks(2), end.plusWeeks(2))),
+                        toTest.entriesBetween(start.plusDays(1), start.plusWeeks(2).plusDays(1)).collect(toUnmodifiableList())
+                ),
+                () -> assertThrows(DateAlreadyTakenException.class, () -> toTest.scheduleOnCall(exampleOnCall(end.plusWeeks(3).minusHours(1), end.plusWeeks(3)))),
+                () -> assertThrows(DateAlreadyTakenException.class, () -> toTest.scheduleRecurringOnCall(exampleWeeklyOnCall()))
+        );
+    }
+
+    @Test
+    @DisplayName("should turn just the occurrence split by a visit into entries")
+    void scheduleRecurringOnCall_materializesOccurrenceSplitByVisit() {
+        // given
+        toTest.scheduleRecurringOnCall(exampleWeeklyOnCall());
+
+        // when
+        toTest.scheduleVisit(exampleVisit(start.plusWeeks(1).plusMinutes(30), start.plusWeeks(1).plusMinutes(90)));
+
+        // then
+        assertAll(
+                () -> assertEquals(Set.of(
+                        exampleOnCall(start.plusWeeks(1), start.plusWeeks(1).plusMinutes(30)),
+                        exampleVisit(start.plusWeeks(1).plusMinutes(30), start.plusWeeks(1).plusMinutes(90)),
+                        exampleOnCall(start.plusWeeks(1).plusMinutes(90), end.plusWeeks(1))
+                ), toTest.getSnapshot().getEntries()),
+                () -> assertEquals(
+                        Set.of(exampleWeeklyOnCall().copy(exampleSurgeon(), start, end, exampleRoom(), Period.ofWeeks(1), start.plusWeeks(4), Set.of(start.plusWeeks(1)))),
+                        toTest.getSnapshot().getRecurringOnCalls()
+                )
+        );
+    }
+
+    @Test
+    @DisplayName("should turn just the occurrence trimmed by erase into an entry")
+    void erase_materializesTrimmedOccurrence() {
+        // given
+        toTest.scheduleRecurringOnCall(exampleWeeklyOnCall());
+
+        // when
+        toTest.erase(start.plusWeeks(2).plusHours(1), end.plusWeeks(3).plusHours(1));
+
+        // then
+        assertAll(
+                () -> assertEquals(Set.of(exampleOnCall(start.plusWeeks(2), start.plusWeeks(2).plusHours(1))), toTest.getSnapshot().getEntries()),
+                () -> assertEquals(
+                        List.of(start, start.plusWeeks(1), start.plusWeeks(2)),
+                        toTest.entriesBetween(start, end.plusWeeks(4)).map(ScheduleEntry::getFrom).collect(toUnmodifiableList())
+                )
+        );
+    }
+
     @NotNull
     private static ScheduleEntry exampleOnCall(ZonedDateTime from, ZonedDateTime to) {
         return new ScheduleEntry(
@@ -329,6 +984,18 @@ class ScheduleTest {
         );
     }
 
+    @NotNull
+    private static RecurringOnCall exampleWeeklyOnCall() {
+        return new RecurringOnCall(
+                exampleSurgeon(),
+                start,
+                end,
+                exampleRoom(),
+                Period.ofWeeks(1),
+                start.plusWeeks(4)
+        );
+    }
+
     @NotNull
     private static Doctor exampleSurgeon() {
         return new Doctor(Specialization.SURGEON);
@@ -0,0 +1,60 @@
+package io.github.mat3e.schedule.domain;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("integration")
+@SpringBootTest(properties = {
+        "schedule.warmup.enabled=true",
+        "schedule.directory=build/warmup-test-schedules",
+        "schedule.rooms=1,2"
+})
+class ScheduleWarmupConfigurationTest {
+    private static final Path directory = Path.of("build/warmup-test-schedules");
+
+    @Autowired
+    private ScheduleWarmup warmup;
+    @Autowired
+    private CachingScheduleRepository cache;
+
+    // before the context starts, so there is a clinic to warm up
+    @BeforeAll
+    static void storeClinic() throws IOException {
+        if (Files.exists(directory)) {
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        }
+        var scheduleFactory = new ScheduleFactory(() -> List.of(new Room("1"), new Room("2")));
+        try (var eventLog = new EventLogScheduleRepository(directory, scheduleFactory)) {
+            eventLog.save(scheduleFactory.create(), ScheduleRepository.NO_VERSION);
+        }
+    }
+
+    @Test
+    @DisplayName("should warm up the stored clinics before the application is ready")
+    void warmsUpAtStartup() {
+        assertAll(
+                () -> assertTrue(warmup.isReady()),
+                () -> assertEquals(new WarmupProgress(1, 1, 0, 0), warmup.getProgress()),
+                () -> assertEquals(1, cache.size())
+        );
+    }
+}
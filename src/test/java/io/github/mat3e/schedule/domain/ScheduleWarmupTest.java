@@ -0,0 +1,158 @@
+package io.github.mat3e.schedule.domain;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertAll;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@Tag("unit")
+class ScheduleWarmupTest {
+    private final MeterRegistry registry = new SimpleMeterRegistry();
+    private final InMemoryScheduleRepository stored = new InMemoryScheduleRepository();
+
+    @Test
+    @DisplayName("should load every clinic into the cache")
+    void warmUp_loadsClinics() throws Exception {
+        // given
+        var first = storedSchedule();
+        var second = storedSchedule();
+        var unknown = UUID.randomUUID();
+        var cache = new CachingScheduleRepository(stored, 10, registry);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        var toTest = new ScheduleWarmup(cache, executor, 2, registry);
+
+        // when
+        var result = toTest.warmUp(List.of(first, second, unknown, first)).get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // then
+        assertAll(
+                () -> assertEquals(new WarmupProgress(3, 2, 1, 0), result),
+                () -> assertTrue(toTest.isReady()),
+                () -> assertEquals(2, cache.size()),
+                () -> assertEquals(1, registry.get("schedule.warmup").tag("clinic", first.toString()).tag("outcome", "loaded").timer().count()),
+                () -> assertEquals(1, registry.get("schedule.warmup").tag("clinic", unknown.toString()).tag("outcome", "missing").timer().count()),
+                () -> assertEquals(0.0, registry.get("schedule.warmup.remaining").gauge().value())
+        );
+    }
+
+    @Test
+    @DisplayName("should load no more clinics at a time than allowed")
+    void warmUp_boundsConcurrentLoads() throws Exception {
+        // given
+        var running = new AtomicInteger();
+        var mostRunning = new AtomicInteger();
+        ScheduleRepository slow = new ScheduleRepository() {
+            @Override
+            public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+                mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                running.decrementAndGet();
+                return Optional.empty();
+            }
+
+            @Override
+            public long save(final Schedule schedule, final long expectedVersion) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        var toTest = new ScheduleWarmup(slow, executor, 3, registry);
+
+        // when
+        var result = toTest.warmUp(List.of(
+                UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID()
+        )).get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // then
+        assertAll(
+                () -> assertEquals(new WarmupProgress(6, 0, 6, 0), result),
+                () -> assertTrue(mostRunning.get() <= 3)
+        );
+    }
+
+    @Test
+    @DisplayName("should not be ready until every clinic was tried")
+    void isReady_waitsForAllClinics() throws Exception {
+        // given
+        var release = new CountDownLatch(1);
+        ScheduleRepository blocked = new ScheduleRepository() {
+            @Override
+            public Optional<VersionedSchedule> findBy(final UUID clinicId) {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("Storage unavailable");
+            }
+
+            @Override
+            public long save(final Schedule schedule, final long expectedVersion) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        var toTest = new ScheduleWarmup(blocked, executor, 1, registry);
+        var before = toTest.isReady();
+
+        // when
+        var result = toTest.warmUp(List.of(UUID.randomUUID()));
+        var whileLoading = toTest.isReady();
+        release.countDown();
+        var progress = result.get(5, TimeUnit.SECONDS);
+        executor.shutdown();
+
+        // then
+        assertAll(
+                () -> assertFalse(before),
+                () -> assertFalse(whileLoading),
+                () -> assertEquals(new WarmupProgress(1, 0, 0, 1), progress),
+                () -> assertTrue(toTest.isReady()),
+                () -> assertThrows(IllegalStateException.class, () -> toTest.warmUp(List.of()))
+        );
+    }
+
+    @Test
+    @DisplayName("should count clinics as failed when no loader could start")
+    void warmUp_failsClinicsWhenExecutorRejects() throws Exception {
+        // given
+        var toTest = new ScheduleWarmup(stored, command -> {
+            throw new RejectedExecutionException();
+        }, 2, registry);
+
+        // when
+        var result = toTest.warmUp(List.of(storedSchedule(), storedSchedule())).get(5, TimeUnit.SECONDS);
+
+        // then
+        assertEquals(new WarmupProgress(2, 0, 0, 2), result);
+    }
+
+    private UUID storedSchedule() {
+        var schedule = new Schedule(List.of(new Room("1")));
+        stored.save(schedule, ScheduleRepository.NO_VERSION);
+        return schedule.getClinicId();
+    }
+}